@@ -0,0 +1,90 @@
+package io.gdcc.jdbc.conffile.adapters;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares single key lookups in a {@link HashMap}, the {@link PerfectHashIndex} and the {@link FrontCodedIndex},
+ * for 1k, 100k and 1M keys, both for present and absent keys. The retained heap per key of the index (measured with
+ * JOL, including the values) is printed when setting up a trial.
+ * Run with {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args="IndexBenchmark"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexBenchmark {
+    
+    @Param({"hash", "perfect", "frontcoded"})
+    public String index;
+    
+    @Param({"1000", "100000", "1000000"})
+    public int keys;
+    
+    private Map<String, String> sut;
+    private String[] present;
+    private String[] absent;
+    private int next;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        Map<String, String> hashMap = new HashMap<>();
+        for (int i = 0; i < keys; i++) {
+            hashMap.put("dataverse.section" + (i % 100) + ".key" + i, "value" + i);
+        }
+        switch (index) {
+            case "perfect":
+                sut = PerfectHashIndex.of(hashMap);
+                break;
+            case "frontcoded":
+                sut = FrontCodedIndex.of(hashMap);
+                break;
+            default:
+                sut = hashMap;
+        }
+        // Everything reachable from the index: entries, tables and arrays along with the keys and values
+        System.out.printf("%nRetained bytes per key: %.1f%n", (double) GraphLayout.parseInstance(sut).totalSize() / keys);
+        
+        // Look up keys in random order: iterating in the order of the hash map would favor its memory layout
+        List<String> shuffled = new ArrayList<>(hashMap.keySet());
+        Collections.shuffle(shuffled, new Random(42));
+        present = shuffled.toArray(String[]::new);
+        absent = shuffled.stream().map(key -> "mp.config." + key).toArray(String[]::new);
+    }
+    
+    private int next() {
+        next = next + 1 < keys ? next + 1 : 0;
+        return next;
+    }
+    
+    @Benchmark
+    public String present() {
+        return sut.get(present[next()]);
+    }
+    
+    @Benchmark
+    public String absent() {
+        return sut.get(absent[next()]);
+    }
+}
@@ -0,0 +1,56 @@
+package io.gdcc.jdbc.conffile.adapters;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Generates synthetic TOML files of a given size for benchmarking, using the typical mix of tables, arrays of
+ * tables, dotted keys, value arrays and multi-line strings found in generated configs.
+ */
+final class TomlFixtures {
+    
+    private TomlFixtures() {
+        // Intentionally left blank - static helpers only
+    }
+    
+    static Path write(Path directory, String basename, long targetBytes) throws IOException {
+        Path file = directory.resolve(basename + ".toml");
+        long written = 0;
+        int section = 0;
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            String header = "title = \"Benchmark\"\nversion = 1\n\n";
+            writer.write(header);
+            written += header.length();
+            
+            while (written < targetBytes) {
+                StringBuilder block = new StringBuilder();
+                block.append("[dataverse.section").append(section).append("]\n")
+                    .append("name = \"Section number ").append(section).append("\"\n")
+                    .append("enabled = ").append(section % 2 == 0).append('\n')
+                    .append("limit = ").append(section * 1000L).append('\n')
+                    .append("ratio = ").append(section / 7.0).append('\n')
+                    .append("ports = [ 80, 443, ").append(8000 + section % 1000).append(" ]\n")
+                    .append("storage.driver = \"s3\"\n")
+                    .append("storage.bucket = 'bucket-").append(section).append("'\n");
+                if (section % 10 == 0) {
+                    block.append("template = \"\"\"\n{ \"section\": ").append(section)
+                        .append(", \"description\": \"a longer embedded document\" }\n\"\"\"\n");
+                }
+                for (int i = 0; i < 3; i++) {
+                    block.append("[[dataverse.section").append(section).append(".products]]\n")
+                        .append("sku = ").append(section * 10L + i).append('\n')
+                        .append("label = \"Product ").append(i).append("\"\n");
+                }
+                block.append('\n');
+                
+                writer.write(block.toString());
+                written += block.length();
+                section++;
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,84 @@
+package io.gdcc.jdbc.conffile.adapters;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Compares flattening a TOML file with the available parser backends (night-config, the streaming parser,
+ * the mapped index, the compiled index and Jackson), for files from 1 KB to 50 MB. The compiled index is compiled
+ * once during the first invocation, all other invocations measure mapping the existing index (as after a restart). Run with
+ * {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args="TomlParserBenchmark -prof gc"} to include allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TomlParserBenchmark {
+    
+    @Param({"1", "100", "1024", "10240", "51200"})
+    public int sizeKb;
+    
+    private Path directory;
+    private Path file;
+    private TomlParserBackend compiled;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("toml-benchmark");
+        file = TomlFixtures.write(directory, "benchmark", sizeKb * 1024L);
+        compiled = new CompiledTomlBackend(directory.resolve("index"), false);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+    
+    @Benchmark
+    public Map<String, String> nightConfig() throws IOException {
+        return TomlParserBackend.of(AdapterOptions.Parser.NIGHTCONFIG).flatten(file);
+    }
+    
+    @Benchmark
+    public Map<String, String> streaming() throws IOException {
+        return TomlParserBackend.of(AdapterOptions.Parser.STREAMING).flatten(file);
+    }
+    
+    @Benchmark
+    public Map<String, String> mapped() throws IOException {
+        return TomlParserBackend.of(AdapterOptions.Parser.MAPPED).flatten(file);
+    }
+    
+    @Benchmark
+    public Map<String, String> compiled() throws IOException {
+        return compiled.flatten(file);
+    }
+    
+    @Benchmark
+    public Map<String, String> jackson() throws IOException {
+        return TomlParserBackend.of(AdapterOptions.Parser.JACKSON).flatten(file);
+    }
+}
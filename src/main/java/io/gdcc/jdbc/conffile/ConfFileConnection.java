@@ -1,6 +1,5 @@
 package io.gdcc.jdbc.conffile;
 
-import java.nio.file.Path;
 import java.sql.Array;
 import java.sql.Blob;
 import java.sql.CallableStatement;
@@ -21,17 +20,34 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 
+/**
+ * A thin view of a {@link ConfFileEngine}, which holds everything worth keeping between connections. Connections can
+ * be shared between threads, and so can their statements: preparing the same SQL again returns the same statement.
+ */
 public class ConfFileConnection implements Connection {
     
-    private final Path directory;
-    private final String adapter;
+    // Apps only prepare a handful of different statements, don't let a misbehaving one fill the heap
+    static final int MAX_CACHED_STATEMENTS = 64;
+    
+    private final ConfFileEngine engine;
+    private final Map<String, ConfFilePreparedStatement> statements = new ConcurrentHashMap<>();
+    private final Runnable onClose;
     private final List<SQLWarning> warnings = new ArrayList<>();
+    private volatile boolean closed = false;
+    
+    /**
+     * @param onClose Called when the connection is closed the first time (may be null)
+     */
+    ConfFileConnection(ConfFileEngine engine, Runnable onClose) {
+        this.engine = engine;
+        this.onClose = onClose;
+    }
     
-    ConfFileConnection(Path directory, String adapter) {
-        this.directory = directory;
-        this.adapter = adapter;
+    ConfFileEngine getEngine() {
+        return engine;
     }
     
     @Override
@@ -39,7 +55,18 @@ public class ConfFileConnection implements Connection {
         if (sql == null || sql.isBlank()) {
             throw new SQLException("SQL statement cannot be null or empty");
         }
-        return new ConfFilePreparedStatement(this.directory, this.adapter, sql);
+        if (closed) {
+            throw new SQLException("Connection is closed");
+        }
+        ConfFilePreparedStatement statement = statements.get(sql);
+        if (statement == null) {
+            statement = engine.prepareStatement(this, sql);
+            if (statements.size() < MAX_CACHED_STATEMENTS) {
+                ConfFilePreparedStatement cached = statements.putIfAbsent(sql, statement);
+                statement = cached != null ? cached : statement;
+            }
+        }
+        return statement.prepare();
     }
     
     @Override
@@ -103,13 +130,19 @@ public class ConfFileConnection implements Connection {
     }
     
     @Override
-    public void close() throws SQLException {
-        // Intentionally left blank - there is nothing we can close here
+    public synchronized void close() throws SQLException {
+        // Gives up the use of the engine, which shuts down when this was its last user
+        if (!closed) {
+            closed = true;
+            if (onClose != null) {
+                onClose.run();
+            }
+        }
     }
     
     @Override
     public boolean isClosed() throws SQLException {
-        return false;
+        return closed;
     }
     
     @Override
@@ -260,7 +293,7 @@ public class ConfFileConnection implements Connection {
     
     @Override
     public boolean isValid(int timeout) throws SQLException {
-        return true;
+        return !closed;
     }
     
     @Override
@@ -0,0 +1,23 @@
+package io.gdcc.jdbc.conffile;
+
+import javax.sql.ConnectionPoolDataSource;
+import javax.sql.PooledConnection;
+import java.sql.SQLException;
+
+/**
+ * A data source for connection pools, configured like {@link ConfFileDataSource}. All pooled connections share
+ * one set up of the config directory, so a pool has warm caches from its first query on.
+ */
+public class ConfFileConnectionPoolDataSource extends ConfFileDataSource implements ConnectionPoolDataSource {
+    
+    @Override
+    public PooledConnection getPooledConnection() throws SQLException {
+        return new ConfFilePooledConnection(acquireEngine());
+    }
+    
+    @Override
+    public PooledConnection getPooledConnection(String user, String password) throws SQLException {
+        // Intentionally ignoring credentials - files are protected by the file system only
+        return getPooledConnection();
+    }
+}
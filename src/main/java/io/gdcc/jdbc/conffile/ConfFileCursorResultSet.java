@@ -0,0 +1,194 @@
+package io.gdcc.jdbc.conffile;
+
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A forward-only result set reading the items while the cursor moves: it fetches up to fetch size rows at a time
+ * into parallel arrays of keys and values, so only these rows are held in memory, no matter how many items there are.
+ */
+class ConfFileCursorResultSet extends ConfFileResultSet {
+    
+    // How many rows to fetch at once, unless told otherwise
+    static final int DEFAULT_FETCH_SIZE = 256;
+    
+    private final Buffer buffer;
+    private final Iterator<Map.Entry<String, String>> items;
+    private final int maxRows;
+    private int fetchSize;
+    
+    // The number of the row the cursor is on and of the first fetched row, starting with 0
+    private int position = -1;
+    private int fetchedStart = 0;
+    private int fetched = 0;
+    private boolean exhausted = false;
+    
+    private ConfFileCursorResultSet(String[] labels, Column[] columns, Buffer buffer, Iterator<Map.Entry<String, String>> items,
+                                    int fetchSize, int maxRows) {
+        super(labels, columns, 0);
+        this.buffer = buffer;
+        this.items = items;
+        this.fetchSize = fetchSize;
+        this.maxRows = maxRows;
+    }
+    
+    /**
+     * @param keyLabel The label of the key column, or empty to only have a value column
+     * @param fetchSize How many rows to fetch at once, 0 for the default
+     * @param maxRows The maximum number of rows, 0 for no limit
+     */
+    static ConfFileCursorResultSet of(String keyLabel, String valueLabel, Iterator<Map.Entry<String, String>> items, int fetchSize, int maxRows) {
+        Buffer buffer = new Buffer();
+        Column values = row -> buffer.values[row];
+        if (keyLabel.isEmpty()) {
+            return new ConfFileCursorResultSet(new String[]{valueLabel}, new Column[]{values}, buffer, items, fetchSize, maxRows);
+        }
+        return new ConfFileCursorResultSet(new String[]{keyLabel, valueLabel}, new Column[]{row -> buffer.keys[row], values}, buffer,
+            items, fetchSize, maxRows);
+    }
+    
+    @Override
+    public boolean next() throws SQLException {
+        if (position >= fetchedStart + fetched && exhausted) {
+            return false;
+        }
+        position++;
+        if (position >= fetchedStart + fetched) {
+            fetch();
+        }
+        return position < fetchedStart + fetched;
+    }
+    
+    private void fetch() throws SQLException {
+        fetchedStart += fetched;
+        fetched = 0;
+        int wanted = fetchSize > 0 ? fetchSize : DEFAULT_FETCH_SIZE;
+        if (maxRows > 0) {
+            wanted = Math.min(wanted, maxRows - fetchedStart);
+        }
+        if (buffer.values.length < wanted) {
+            buffer.keys = new String[wanted];
+            buffer.values = new String[wanted];
+        }
+        try {
+            while (fetched < wanted && items.hasNext()) {
+                Map.Entry<String, String> item = items.next();
+                buffer.keys[fetched] = item.getKey();
+                buffer.values[fetched] = item.getValue();
+                fetched++;
+            }
+        } catch (UncheckedIOException | IllegalStateException e) {
+            // Values of lazily decoded items might fail to decode
+            throw new SQLException(e);
+        }
+        exhausted = !items.hasNext() || (maxRows > 0 && fetchedStart + fetched >= maxRows);
+    }
+    
+    @Override
+    int row() throws SQLException {
+        if (position < fetchedStart || position >= fetchedStart + fetched) {
+            throw new SQLException("Can't read beyond existing result rows");
+        }
+        return position - fetchedStart;
+    }
+    
+    @Override
+    public boolean isBeforeFirst() throws SQLException {
+        // Quote: a value of false if the cursor is at any other position or the result set contains no rows
+        if (position < 0 && fetched == 0 && !exhausted) {
+            fetch();
+        }
+        return position < 0 && fetched > 0;
+    }
+    
+    @Override
+    public boolean isAfterLast() throws SQLException {
+        // Quote: a value of false if the cursor is at any other position or the result set contains no rows
+        return exhausted && fetchedStart + fetched > 0 && position >= fetchedStart + fetched;
+    }
+    
+    @Override
+    public boolean isFirst() throws SQLException {
+        return position == 0 && fetched > 0;
+    }
+    
+    @Override
+    public boolean isLast() throws SQLException {
+        // Whether there are more items is known with every fetch
+        return exhausted && position >= 0 && position == fetchedStart + fetched - 1;
+    }
+    
+    @Override
+    public void beforeFirst() throws SQLException {
+        throw forwardOnly();
+    }
+    
+    @Override
+    public void afterLast() throws SQLException {
+        throw forwardOnly();
+    }
+    
+    @Override
+    public boolean first() throws SQLException {
+        throw forwardOnly();
+    }
+    
+    @Override
+    public boolean last() throws SQLException {
+        throw forwardOnly();
+    }
+    
+    @Override
+    public int getRow() throws SQLException {
+        return position >= fetchedStart && position < fetchedStart + fetched ? position + 1 : 0;
+    }
+    
+    @Override
+    public boolean absolute(int row) throws SQLException {
+        throw forwardOnly();
+    }
+    
+    @Override
+    public boolean relative(int rows) throws SQLException {
+        throw forwardOnly();
+    }
+    
+    @Override
+    public boolean previous() throws SQLException {
+        throw forwardOnly();
+    }
+    
+    @Override
+    public void setFetchSize(int rows) throws SQLException {
+        if (rows < 0) {
+            throw new SQLException("Invalid fetch size, must not be negative: " + rows);
+        }
+        // Applies from the next fetch on
+        this.fetchSize = rows;
+    }
+    
+    @Override
+    public int getFetchSize() throws SQLException {
+        return fetchSize;
+    }
+    
+    @Override
+    public int getType() throws SQLException {
+        return ResultSet.TYPE_FORWARD_ONLY;
+    }
+    
+    private static SQLException forwardOnly() {
+        return new SQLException("The result set is forward only");
+    }
+    
+    /**
+     * The fetched rows, replaced by larger arrays when fetching more rows at once
+     */
+    private static final class Buffer {
+        private String[] keys = new String[0];
+        private String[] values = new String[0];
+    }
+}
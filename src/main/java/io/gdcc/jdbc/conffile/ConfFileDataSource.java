@@ -0,0 +1,98 @@
+package io.gdcc.jdbc.conffile;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.logging.Logger;
+
+/**
+ * A data source for a config directory, configured with the URL of the driver (e.g. as a property {@code url}
+ * of a connection pool). The directory and its options are set up once with the first connection and shared by all
+ * connections afterwards, so getting a connection is cheap and every connection starts with warm caches. They are
+ * shared with the driver and other data sources for the same directory, and released when the last connection is
+ * closed. Statements are cached by each connection, their query plans are cached driver-wide.
+ */
+public class ConfFileDataSource implements DataSource {
+    
+    private static final Logger logger = Logger.getLogger(ConfFileDataSource.class.getName());
+    
+    private volatile String url;
+    // The engine used before, reused as long as it has not been shut down
+    private ConfFileEngine engine;
+    private PrintWriter logWriter;
+    private int loginTimeout = 0;
+    
+    public String getUrl() {
+        return url;
+    }
+    
+    /**
+     * @param url The URL of the config directory, e.g. {@code jdbc:conffile:toml:///etc/dataverse?changeDetection=watch}
+     */
+    public synchronized void setUrl(String url) {
+        this.url = url;
+        this.engine = null;
+    }
+    
+    /**
+     * @return The engine for the URL, to be given back by {@link ConfFileDriver#release(ConfFileEngine)} when done with it
+     */
+    synchronized ConfFileEngine acquireEngine() throws SQLException {
+        if (this.engine == null || !ConfFileDriver.retain(this.engine)) {
+            this.engine = ConfFileDriver.acquire(this.url, null);
+            logger.fine(() -> "Using engine for " + this.engine.getDirectory());
+        }
+        return this.engine;
+    }
+    
+    @Override
+    public Connection getConnection() throws SQLException {
+        return acquireEngine().connect();
+    }
+    
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        // Intentionally ignoring credentials - files are protected by the file system only
+        return getConnection();
+    }
+    
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return logWriter;
+    }
+    
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        this.logWriter = out;
+    }
+    
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        this.loginTimeout = seconds;
+    }
+    
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return loginTimeout;
+    }
+    
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return Logger.getLogger(ConfFileDataSource.class.getPackageName());
+    }
+    
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Cannot unwrap to " + iface.getName());
+    }
+    
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this);
+    }
+}
@@ -1,13 +1,14 @@
 package io.gdcc.jdbc.conffile;
 
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.Driver;
 import java.sql.DriverManager;
 import java.sql.DriverPropertyInfo;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.logging.Logger;
 
@@ -18,6 +19,13 @@ public class ConfFileDriver implements Driver {
     // TODO: the file type (here: toml) can be made more flexible if we want to add more file types later on
     private static final String urlPrefix = "jdbc:conffile:toml://";
     
+    // Engines in use by the real path of their directory and their options, also guards their number of users
+    private static final Map<ConfFileEngine.Key, ConfFileEngine> engines = new HashMap<>();
+    // Engines in use by the URL and properties they have been acquired with, guarded by the engines
+    private static final Map<List<Object>, ConfFileEngine> enginesByUrl = new HashMap<>();
+    // Apps only use a handful of different URLs, don't let a misbehaving one fill the heap
+    private static final int MAX_CACHED_URLS = 256;
+    
     static {
         try {
             register();
@@ -41,27 +49,79 @@ public class ConfFileDriver implements Driver {
     
     @Override
     public Connection connect(String url, Properties info) throws SQLException {
-        String[] urlParts = url.split(":");
-        if (urlParts.length < 4 ||
-            !urlParts[0].equalsIgnoreCase("jdbc") ||
-            !urlParts[1].equalsIgnoreCase("conffile") ||
-            // TODO: if we want more adapters, this needs to be changed
-            !urlParts[2].equalsIgnoreCase("toml") ||
-            !urlParts[3].startsWith("//")) {
-            throw new SQLException("Invalid url: " + url);
+        return acquire(url, info).connect();
+    }
+    
+    /**
+     * Get the engine for the URL and use it: all URLs and properties leading to the same directory (by its real path)
+     * with the same options share one engine, which is started with its first user. While an engine is in use,
+     * acquiring it again with a URL and properties it has been acquired with before neither parses the URL nor
+     * looks at the directory.
+     * @return The engine, to be given back by {@link #release(ConfFileEngine)} when done with it
+     */
+    static ConfFileEngine acquire(String url, Properties info) throws SQLException {
+        List<Object> raw = url != null ? List.of(url, info != null ? new HashMap<>(info) : Map.of()) : null;
+        synchronized (engines) {
+            ConfFileEngine known = raw != null ? enginesByUrl.get(raw) : null;
+            if (known != null) {
+                known.users++;
+                return known;
+            }
         }
         
-        String adapter = urlParts[2].toLowerCase();
-        
-        // Chop of the // from the start of the file path
-        String dirPath = urlParts[3].substring(2);
-        Path directory = Path.of(dirPath);
-        
-        if (!Files.isDirectory(directory) || !Files.isReadable(directory)) {
-            throw new SQLException("Invalid or non-accessible directory: " + dirPath);
+        ConfFileEngine opened = ConfFileEngine.open(url, info);
+        synchronized (engines) {
+            ConfFileEngine engine = engines.get(opened.key());
+            if (engine == null) {
+                opened.start();
+                engine = opened;
+                engines.put(engine.key(), engine);
+            }
+            if (raw != null && enginesByUrl.size() < MAX_CACHED_URLS) {
+                enginesByUrl.put(raw, engine);
+            }
+            engine.users++;
+            return engine;
+        }
+    }
+    
+    /**
+     * Use an engine acquired before once more, unless it has been shut down in the meantime.
+     * @return true if the engine can be used, to be given back by {@link #release(ConfFileEngine)} when done with it
+     */
+    static boolean retain(ConfFileEngine engine) {
+        synchronized (engines) {
+            if (engine.users == 0) {
+                return false;
+            }
+            engine.users++;
+            return true;
+        }
+    }
+    
+    /**
+     * Stop using an engine. Shuts the engine down when this was its last user.
+     */
+    static void release(ConfFileEngine engine) {
+        synchronized (engines) {
+            if (engine.users == 0 || --engine.users > 0) {
+                return;
+            }
+            engines.remove(engine.key(), engine);
+            enginesByUrl.values().removeIf(known -> known == engine);
+            boolean lastOfDirectory = engines.keySet().stream()
+                .noneMatch(key -> key.getDirectory().equals(engine.getDirectory()));
+            engine.shutDown(lastOfDirectory);
+        }
+    }
+    
+    /**
+     * @return How many engines are in use, i.e. how many different directories and options connections are open for
+     */
+    public static int getEngines() {
+        synchronized (engines) {
+            return engines.size();
         }
-        
-        return new ConfFileConnection(directory, adapter);
     }
     
     @Override
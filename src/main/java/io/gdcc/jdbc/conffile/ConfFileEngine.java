@@ -0,0 +1,189 @@
+package io.gdcc.jdbc.conffile;
+
+import io.gdcc.jdbc.conffile.adapters.AdapterOptions;
+import io.gdcc.jdbc.conffile.adapters.ChangeDetector;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Everything the connections to a config directory share: the directory and its options and the detection of
+ * changes within it. The snapshots of its files are kept in the process-wide
+ * {@link io.gdcc.jdbc.conffile.adapters.SnapshotCache}.
+ * <p>
+ * An engine is long-lived, connections are thin views of it: opening a connection through a data source, or with a
+ * URL and properties the engine is in use with already, does not parse the URL or look at the directory again.
+ * Preparing a statement only creates a small object around its cached {@link QueryPlan} (once per connection and SQL).
+ * Engines are shared driver-wide by the real path of their directory and their options, and shut down when their
+ * last user is gone (see {@link ConfFileDriver#acquire(String, Properties)}).
+ */
+final class ConfFileEngine {
+    
+    private static final Logger logger = Logger.getLogger(ConfFileEngine.class.getName());
+    
+    private static final LongAdder opens = new LongAdder();
+    
+    private final Path directory;
+    private final String adapter;
+    private final AdapterOptions options;
+    
+    // Connections and pooled connections using this engine, guarded by the registry of the driver
+    int users = 0;
+    
+    private ConfFileEngine(Path directory, String adapter, AdapterOptions options) {
+        this.directory = directory;
+        this.adapter = adapter;
+        this.options = options;
+    }
+    
+    /**
+     * Parse the URL and its options and check the directory. The directory is resolved to its real path, so all
+     * paths leading to it (e.g. via symbolic links) end up with the same engine.
+     * @param info Options given as connection properties, parameters in the URL take precedence (may be null)
+     */
+    static ConfFileEngine open(String url, Properties info) throws SQLException {
+        opens.increment();
+        String[] urlParts = url == null ? new String[0] : url.split(":");
+        if (urlParts.length < 4 ||
+            !urlParts[0].equalsIgnoreCase("jdbc") ||
+            !urlParts[1].equalsIgnoreCase("conffile") ||
+            // TODO: if we want more adapters, this needs to be changed
+            !urlParts[2].equalsIgnoreCase("toml") ||
+            !urlParts[3].startsWith("//")) {
+            throw new SQLException("Invalid url: " + url);
+        }
+        
+        String adapter = urlParts[2].toLowerCase();
+        
+        // Chop of the // from the start of the file path
+        String dirPath = urlParts[3].substring(2);
+        
+        // Options may be given as connection properties, parameters in the URL take precedence
+        Properties properties = new Properties();
+        if (info != null) {
+            properties.putAll(info);
+        }
+        int parametersStart = dirPath.indexOf('?');
+        if (parametersStart >= 0) {
+            parseUrlParameters(dirPath.substring(parametersStart + 1), properties);
+            dirPath = dirPath.substring(0, parametersStart);
+        }
+        AdapterOptions options = new AdapterOptions(properties);
+        
+        Path directory = Path.of(dirPath);
+        
+        if (!Files.isDirectory(directory) || !Files.isReadable(directory)) {
+            throw new SQLException("Invalid or non-accessible directory: " + dirPath);
+        }
+        
+        try {
+            return new ConfFileEngine(directory.toRealPath(), adapter, options);
+        } catch (IOException e) {
+            throw new SQLException("Invalid or non-accessible directory: " + dirPath, e);
+        }
+    }
+    
+    /**
+     * @return How many times a URL has been parsed and its directory checked
+     */
+    static long getOpens() {
+        return opens.sum();
+    }
+    
+    /**
+     * Start detecting changes within the directory, unless another engine does so already.
+     */
+    void start() throws SQLException {
+        try {
+            ChangeDetector.start(directory, options);
+        } catch (IOException e) {
+            throw new SQLException("Cannot detect changes in directory: " + directory, e);
+        }
+        logger.fine(() -> "Started engine for " + directory);
+    }
+    
+    /**
+     * When the engine was the last one for its directory, stop detecting changes within it. The snapshots of its files
+     * are kept: without a detector they are checked on disk again, so the next connection starts with warm caches.
+     * @param lastOfDirectory true if no other engine (with other options) uses the directory
+     */
+    void shutDown(boolean lastOfDirectory) {
+        if (lastOfDirectory) {
+            ChangeDetector.stop(directory);
+        }
+        logger.fine(() -> "Shut down engine for " + directory);
+    }
+    
+    static void parseUrlParameters(String parameters, Properties properties) throws SQLException {
+        for (String parameter : parameters.split("&")) {
+            if (parameter.isEmpty()) {
+                continue;
+            }
+            int separator = parameter.indexOf('=');
+            if (separator <= 0) {
+                throw new SQLException("Invalid url parameter: " + parameter);
+            }
+            properties.setProperty(parameter.substring(0, separator), parameter.substring(separator + 1));
+        }
+    }
+    
+    /**
+     * @return A new connection, which gives up its use of the engine when closed. The caller must have acquired
+     *         the use of the engine for it.
+     */
+    ConfFileConnection connect() {
+        return new ConfFileConnection(this, () -> ConfFileDriver.release(this));
+    }
+    
+    /**
+     * @return A new statement of the connection, sharing its plan with all statements of the same SQL
+     */
+    ConfFilePreparedStatement prepareStatement(ConfFileConnection connection, String sql) throws SQLException {
+        return new ConfFilePreparedStatement(connection, this.directory, this.adapter, this.options, sql);
+    }
+    
+    Path getDirectory() {
+        return directory;
+    }
+    
+    Key key() {
+        return new Key(directory, options);
+    }
+    
+    static final class Key {
+        private final Path directory;
+        private final AdapterOptions options;
+        
+        Key(Path directory, AdapterOptions options) {
+            this.directory = directory;
+            this.options = options;
+        }
+        
+        Path getDirectory() {
+            return directory;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return directory.equals(other.directory) && options.equals(other.options);
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(directory, options);
+        }
+    }
+}
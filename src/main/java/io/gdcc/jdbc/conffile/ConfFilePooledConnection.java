@@ -0,0 +1,72 @@
+package io.gdcc.jdbc.conffile;
+
+import javax.sql.ConnectionEvent;
+import javax.sql.ConnectionEventListener;
+import javax.sql.PooledConnection;
+import javax.sql.StatementEventListener;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A physical connection as seen by a connection pool. As there is nothing physical about a connection to a config
+ * directory, every handle given to the application is a fresh view of the same engine, and closing a handle just
+ * tells the pool that it can be reused. The pooled connection uses the engine until it is closed itself.
+ */
+class ConfFilePooledConnection implements PooledConnection {
+    
+    private final ConfFileEngine engine;
+    private final List<ConnectionEventListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean closed = false;
+    
+    /**
+     * @param engine An engine acquired for this pooled connection, which gives it back when closed
+     */
+    ConfFilePooledConnection(ConfFileEngine engine) {
+        this.engine = engine;
+    }
+    
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Pooled connection is closed");
+        }
+        return new ConfFileConnection(engine, this::handleClosed);
+    }
+    
+    private void handleClosed() {
+        ConnectionEvent event = new ConnectionEvent(this);
+        for (ConnectionEventListener listener : listeners) {
+            listener.connectionClosed(event);
+        }
+    }
+    
+    @Override
+    public synchronized void close() throws SQLException {
+        if (!closed) {
+            closed = true;
+            ConfFileDriver.release(engine);
+        }
+    }
+    
+    @Override
+    public void addConnectionEventListener(ConnectionEventListener listener) {
+        listeners.add(listener);
+    }
+    
+    @Override
+    public void removeConnectionEventListener(ConnectionEventListener listener) {
+        listeners.remove(listener);
+    }
+    
+    @Override
+    public void addStatementEventListener(StatementEventListener listener) {
+        // Intentionally left blank - statements are cached by each connection handle itself, there are no events to send
+    }
+    
+    @Override
+    public void removeStatementEventListener(StatementEventListener listener) {
+        // Intentionally left blank - see above
+    }
+}
@@ -1,13 +1,14 @@
 package io.gdcc.jdbc.conffile;
 
 import io.gdcc.jdbc.conffile.adapters.Adapter;
+import io.gdcc.jdbc.conffile.adapters.AdapterOptions;
+import io.gdcc.jdbc.conffile.adapters.ProfileCatalog;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.math.BigDecimal;
 import java.net.URL;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.Array;
 import java.sql.Blob;
@@ -27,150 +28,449 @@ import java.sql.SQLWarning;
 import java.sql.SQLXML;
 import java.sql.Time;
 import java.sql.Timestamp;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Set;
 
+/**
+ * A statement which can be executed by many threads at once: the plan is immutable, while parameters and settings
+ * are kept per thread. Executing a query binds a copy of the parameters of the calling thread, so nothing set
+ * by another thread (or later on) changes the query. Connections cache their statements by SQL, preparing the
+ * same statement again resets the parameters and settings of the calling thread.
+ */
 public class ConfFilePreparedStatement implements PreparedStatement {
     
     private final String adapterType;
-    private final String query;
-    private final boolean singleValueQuery;
+    private final AdapterOptions options;
+    private final QueryPlan plan;
     private final Path directory;
-    private final String tableName;
-    private final String keyColumnLabel;
-    private final String valueColumnLabel;
-    private String profile = null;
-    private final Map<Integer, String> queryParts = new HashMap<>();
-    
-    ConfFilePreparedStatement(Path directory, String adapterType, String sql) throws SQLException {
-        String tableName;
+    private final Connection connection;
+    private final ThreadLocal<Parameters> parameters;
+    
+    ConfFilePreparedStatement(Connection connection, Path directory, String adapterType, AdapterOptions options, String sql) throws SQLException {
+        this.connection = connection;
         this.adapterType = adapterType;
+        this.options = options;
         this.directory = directory;
-        this.query = sql.trim();
         
         /* NOTE: we only need to address two types of queries:
          * queryOne = "select " + valueColumn + " from " + table + " where " + keyColumn + " = ?"
          *    --> The "?" is a placeholder and might contain a profile name as %profile.key.to.look.up
          * queryAll = "select " + keyColumn + ", " + valueColumn + " from " + table
+         * Beyond these, there are lookups of many keys, of all keys below a key, ordering, paging and counting
+         * (see QueryPlan). Plans are cached, so preparing the same statement again does not parse it again.
          */
-         
-        if (!this.query.toLowerCase().trim().startsWith("select")) {
-            throw new SQLFeatureNotSupportedException("Only SELECT statements are supported");
-        }
-        
-        this.singleValueQuery = this.query.toLowerCase().contains("where");
+        this.plan = QueryPlan.of(sql);
+        this.parameters = ThreadLocal.withInitial(() -> new Parameters(plan.getParameterCount()));
+    }
+    
+    /**
+     * Hand out the statement (again) to the calling thread: it starts over without parameters and with the
+     * default settings, as if it was a new statement.
+     */
+    ConfFilePreparedStatement prepare() {
+        parameters.remove();
+        return this;
+    }
+    
+    @Override
+    public ResultSet executeQuery() throws SQLException {
+        checkOpen();
+        Bound bound = parameters.get().bind();
         
-        // Get the table name to determine the file name:
-        // Cut of the select part
-        tableName = this.query.substring(sql.toLowerCase().indexOf("from") + "from".length()).trim();
-        // Cut of the where part if present
-        if (tableName.toLowerCase().contains("where")) {
-            tableName = tableName.substring(0, tableName.toLowerCase().indexOf("where")).trim();
-        }
-        this.tableName = tableName;
+        // Only the number of matching rows is needed, which is known without turning any of them into rows
+        if (plan.isCount()) {
+            return ConfFileResultSet.of(plan.getValueColumnLabel(), page(List.of(String.valueOf(count(bound))), bound));
+        }
         
-        // Extract the column names from the select statement
-        if (this.singleValueQuery) {
-            this.valueColumnLabel = this.query.substring("select".length(), sql.toLowerCase().indexOf("from")).trim();
-            this.keyColumnLabel = "";
+        List<Map.Entry<String, String>> items;
+        if (plan.getShape() == QueryPlan.Shape.ONE) {
+            return ConfFileResultSet.of(plan.getValueColumnLabel(), page(readOne(bound), bound));
+        // Receive many properties at once
+        } else if (plan.getShape() == QueryPlan.Shape.MANY) {
+            items = readMany(bound);
+        // Receive all properties below a key
+        } else if (plan.getShape() == QueryPlan.Shape.SUBTREE) {
+            items = readStartingWith(bound);
+        // Receive all properties in order
+        } else if (plan.isSorted()) {
+            items = readAllSorted();
+        // Receive all properties
         } else {
-            String[] columnNames = this.query.substring("select".length(), sql.toLowerCase().indexOf("from")).trim().split(",");
-            this.keyColumnLabel = columnNames[0].trim();
-            this.valueColumnLabel = columnNames[1].trim();
+            return readAllStreaming(bound);
+        }
+        return ConfFileResultSet.of(plan.getKeyColumnLabel(), plan.getValueColumnLabel(), page(items, bound));
+    }
+    
+    private long count(Bound bound) throws SQLException {
+        switch (plan.getShape()) {
+            case ONE:
+                return readOne(bound).size();
+            case MANY:
+                return readMany(bound).size();
+            case SUBTREE:
+                return readStartingWith(bound).size();
+            default:
+                // Count all properties: every index knows its size
+                long count = 0;
+                for (Adapter adapter : readAll().values()) {
+                    count += adapter.readAllItems().size();
+                }
+                return count;
         }
     }
     
-    @Override
-    public ResultSet executeQuery() throws SQLException {
-        if (this.singleValueQuery) {
-            if (queryParts.size() != 1) {
-                throw new SQLException("Not exactly 1 query parameter (the key to look up) given");
-            }
-            
-            try (Adapter adapter = Adapter.Factory.create(this.adapterType, this.directory, this.tableName, this.profile)) {
-                String value = adapter.readItem(queryParts.get(1));
+    /**
+     * @return The value of the key, if there is one
+     */
+    private List<String> readOne(Bound bound) throws SQLException {
+        if (bound.size() != 1) {
+            throw new SQLException("Not exactly 1 query parameter (the key to look up) given");
+        }
+        
+        try {
+            Adapter adapter = Adapter.Factory.create(this.adapterType, this.directory, plan.getTableName(), bound.profile(1), this.options);
+            String value = adapter.readItem(bound.key(1));
+            return value != null ? List.of(value) : List.of();
+        } catch (Exception e) {
+            throw new SQLException(e);
+        }
+    }
+    
+    /**
+     * All items of all files, read while the cursor moves: only the rows of a fetch are in memory at a time.
+     */
+    private ResultSet readAllStreaming(Bound bound) throws SQLException {
+        List<Map<String, String>> files = new ArrayList<>();
+        for (Adapter adapter : readAll().values()) {
+            files.add(adapter.readAllItems());
+        }
+        return ConfFileCursorResultSet.of(plan.getKeyColumnLabel(), plan.getValueColumnLabel(), new Items(files), bound.fetchSize, bound.maxRows);
+    }
+    
+    private List<Map.Entry<String, String>> readMany(Bound bound) throws SQLException {
+        if (bound.size() != plan.getParameterCount()) {
+            throw new SQLException("Not exactly " + plan.getParameterCount() + " query parameters (the keys to look up) given");
+        }
+        
+        try {
+            // Read every file once, so all values of a file come from the same version of it
+            Map<String, Adapter> adapters = new HashMap<>();
+            Set<String> seen = new HashSet<>();
+            List<Map.Entry<String, String>> items = new ArrayList<>();
+            for (int i = 1; i <= plan.getParameterCount(); i++) {
+                String profile = bound.profile(i);
+                String key = bound.key(i);
+                String profiledKey = profile == null ? key : "%" + profile + "." + key;
+                if (!seen.add(profiledKey)) {
+                    continue;
+                }
+                Adapter adapter = adapters.get(profile);
+                if (adapter == null) {
+                    adapter = Adapter.Factory.create(this.adapterType, this.directory, plan.getTableName(), profile, this.options);
+                    adapters.put(profile, adapter);
+                }
+                String value = adapter.readItem(key);
                 if (value != null) {
-                    return new ConfFileResultSet(
-                        List.of(List.of("", value)),
-                        Map.of(this.valueColumnLabel, 1)
-                    );
+                    items.add(Map.entry(profiledKey, value));
                 }
-            } catch (Exception e) {
-                throw new SQLException(e);
             }
-        // Receive all properties
-        } else {
-            // We need to scan for profile files ourselves, as we cannot determine the active profile at this point
-            List<String> profiles;
+            if (plan.isSorted()) {
+                items.sort(Map.Entry.comparingByKey(Adapter.KEY_ORDER));
+            }
+            return items;
+        } catch (Exception e) {
+            throw new SQLException(e);
+        }
+    }
+    
+    private List<Map.Entry<String, String>> readStartingWith(Bound bound) throws SQLException {
+        if (bound.size() != 1) {
+            throw new SQLException("Not exactly 1 query parameter (the pattern to look up) given");
+        }
+        String keyPrefix = prefixOf(bound.key(1));
+        
+        try {
+            Adapter adapter = Adapter.Factory.create(this.adapterType, this.directory, plan.getTableName(), bound.profile(1), this.options);
+            // Only the matching range of the sorted items is looked at, and only the requested page is turned into rows
+            return adapter.readItemsStartingWith(keyPrefix);
+        } catch (Exception e) {
+            throw new SQLException(e);
+        }
+    }
+    
+    /**
+     * @return The adapters of all files of the table by profile, starting with the file without a profile (null)
+     */
+    private Map<String, Adapter> readAll() throws SQLException {
+        // We need to find the profile files ourselves, as we cannot determine the active profile at this point
+        List<String> profileNames;
+        try {
+            profileNames = ProfileCatalog.profilesFor(this.directory, plan.getTableName(), this.adapterType);
+        } catch (IOException e) {
+            throw new SQLException(e);
+        }
+        
+        // Now let's try to read those files
+        Map<String, Adapter> adapters = new LinkedHashMap<>();
+        for (String profileName : profileNames) {
             try {
-                profiles = scanForProfiles(this.directory, this.tableName, this.adapterType);
-            } catch (IOException e) {
+                adapters.put(profileName, Adapter.Factory.create(this.adapterType, this.directory, plan.getTableName(), profileName, this.options));
+            } catch (Exception e) {
                 throw new SQLException(e);
             }
+        }
+        return adapters;
+    }
+    
+    /**
+     * All items of all files in the order of their keys, without copying them: the keys of a profile file all
+     * start with its %profile. prefix and sort between the keys of the file without a profile.
+     */
+    private List<Map.Entry<String, String>> readAllSorted() throws SQLException {
+        Map<String, Adapter> adapters = readAll();
+        List<List<Map.Entry<String, String>>> parts = new ArrayList<>();
+        List<Map.Entry<String, String>> unprofiled = adapters.containsKey(null) ? adapters.get(null).readSortedItems() : List.of();
+        
+        // Split the file without a profile where the profile files go
+        int split = Collections.binarySearch(new Keys(unprofiled), "%", Adapter.KEY_ORDER);
+        split = split < 0 ? -split - 1 : split;
+        parts.add(unprofiled.subList(0, split));
+        
+        List<String> profileNames = new ArrayList<>(adapters.keySet());
+        profileNames.remove(null);
+        profileNames.sort(Comparator.comparing(profile -> "%" + profile + ".", Adapter.KEY_ORDER));
+        for (String profileName : profileNames) {
+            parts.add(adapters.get(profileName).readSortedItems());
+        }
+        
+        parts.add(unprofiled.subList(split, unprofiled.size()));
+        return new Concatenation(parts);
+    }
+    
+    /**
+     * Apply ORDER BY ... DESC, LIMIT, OFFSET and the maximum number of rows to the rows, without copying them.
+     */
+    private <T> List<T> page(List<T> rows, Bound bound) {
+        int size = rows.size();
+        int from = Math.min(plan.getOffset(), size);
+        int limit = bound.maxRows > 0 ? Math.min(plan.getLimit(), bound.maxRows) : plan.getLimit();
+        int to = (int) Math.min(size, (long) from + limit);
+        if (!plan.isDescending()) {
+            return rows.subList(from, to);
+        }
+        return new AbstractList<>() {
+            @Override
+            public T get(int index) {
+                return rows.get(size - 1 - from - Objects.checkIndex(index, to - from));
+            }
             
-            // Now let's try to read those files and gather the properties
-            List<List<String>> rows = new ArrayList<>();
-            for (String profileName : profiles) {
-                try (Adapter adapter = Adapter.Factory.create(this.adapterType, this.directory, this.tableName, profileName)) {
-                    // Read data and transform map into query result
-                    rows.addAll(adapter
-                        .readAllItems()
-                        .entrySet().stream()
-                        .map(entry -> List.of("", entry.getKey(), entry.getValue()))
-                        .collect(Collectors.toList()));
-                    
-                } catch (Exception e) {
-                    throw new SQLException(e);
+            @Override
+            public int size() {
+                return to - from;
+            }
+        };
+    }
+    
+    /**
+     * Extract the prefix from a LIKE pattern. Only a single % at the end is supported as a wildcard, % and _ can be
+     * used literally when escaped with a backslash.
+     */
+    static String prefixOf(String pattern) throws SQLException {
+        StringBuilder prefix = new StringBuilder(pattern.length());
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\\' && i + 1 < pattern.length()) {
+                prefix.append(pattern.charAt(++i));
+            } else if (c == '%' && i == pattern.length() - 1) {
+                return prefix.toString();
+            } else if (c == '%' || c == '_') {
+                break;
+            } else {
+                prefix.append(c);
+            }
+        }
+        throw new SQLFeatureNotSupportedException("Only LIKE patterns with a single trailing % are supported: " + pattern);
+    }
+    
+    /**
+     * The parameters of a thread: the keys to look up and the profiles named in them, at parameter index - 1.
+     * Fetch size and maximum number of rows are kept along with them, as is whether the thread closed the statement.
+     * Only ever used by its own thread.
+     */
+    private static final class Parameters {
+        private final String[] keys;
+        private final String[] profiles;
+        private int fetchSize = 0;
+        private int maxRows = 0;
+        private boolean closed = false;
+        
+        Parameters(int count) {
+            this.keys = new String[count];
+            this.profiles = new String[count];
+        }
+        
+        Bound bind() {
+            return new Bound(keys.clone(), profiles.clone(), fetchSize, maxRows);
+        }
+    }
+    
+    /**
+     * The parameters and settings of a single execution, which cannot change while it runs.
+     */
+    private static final class Bound {
+        private final String[] keys;
+        private final String[] profiles;
+        private final int fetchSize;
+        private final int maxRows;
+        
+        Bound(String[] keys, String[] profiles, int fetchSize, int maxRows) {
+            this.keys = keys;
+            this.profiles = profiles;
+            this.fetchSize = fetchSize;
+            this.maxRows = maxRows;
+        }
+        
+        /**
+         * @return The number of parameters set
+         */
+        int size() {
+            int size = 0;
+            for (String key : keys) {
+                if (key != null) {
+                    size++;
                 }
             }
-            return new ConfFileResultSet(
-                rows,
-                Map.of(this.keyColumnLabel, 1, this.valueColumnLabel, 2)
-            );
+            return size;
+        }
+        
+        String key(int parameterIndex) {
+            return keys[parameterIndex - 1];
+        }
+        
+        String profile(int parameterIndex) {
+            return profiles[parameterIndex - 1];
+        }
+    }
+    
+    /**
+     * The keys of items, e.g. to search them. Random access, so {@link Collections#binarySearch(List, Object, Comparator)}
+     * does not iterate over the items.
+     */
+    private static final class Keys extends AbstractList<String> implements RandomAccess {
+        private final List<Map.Entry<String, String>> items;
+        
+        Keys(List<Map.Entry<String, String>> items) {
+            this.items = items;
+        }
+        
+        @Override
+        public String get(int index) {
+            return items.get(index).getKey();
+        }
+        
+        @Override
+        public int size() {
+            return items.size();
+        }
+    }
+    
+    /**
+     * Iterates over the items of several files one after the other, without copying them.
+     */
+    private static final class Items implements Iterator<Map.Entry<String, String>> {
+        private final Iterator<Map<String, String>> files;
+        private Iterator<Map.Entry<String, String>> current = Collections.emptyIterator();
+        
+        Items(List<Map<String, String>> files) {
+            this.files = files.iterator();
+        }
+        
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext() && files.hasNext()) {
+                current = files.next().entrySet().iterator();
+            }
+            return current.hasNext();
+        }
+        
+        @Override
+        public Map.Entry<String, String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
         }
-        // Nothing found - return empty result.
-        return new ConfFileResultSet(List.of(), Map.of());
     }
     
-    List<String> scanForProfiles(Path directory, String tableName, String adapterType) throws IOException {
+    /**
+     * The items of several files one after the other, without copying them.
+     */
+    private static final class Concatenation extends AbstractList<Map.Entry<String, String>> implements RandomAccess {
+        private final List<List<Map.Entry<String, String>>> parts;
+        private final int size;
         
-        Predicate<Path> allowedSuffix = filename -> Adapter.Factory.suffixesForType(adapterType).stream()
-            .anyMatch(suffix -> filename.getFileName().toString().toLowerCase().endsWith(suffix));
+        Concatenation(List<List<Map.Entry<String, String>>> parts) {
+            this.parts = parts;
+            this.size = parts.stream().mapToInt(List::size).sum();
+        }
         
-        try (Stream<Path> pathStream = Files.list(directory)) {
-            return pathStream
-                .filter(allowedSuffix)
-                .filter(file -> file.getFileName().toString().startsWith(tableName))
-                .map(path -> Adapter.Factory.extractProfileFromFilename(path.getFileName().toString(), tableName, adapterType))
-                .collect(Collectors.toList());
+        @Override
+        public Map.Entry<String, String> get(int index) {
+            int remaining = Objects.checkIndex(index, size);
+            for (List<Map.Entry<String, String>> part : parts) {
+                if (remaining < part.size()) {
+                    return part.get(remaining);
+                }
+                remaining -= part.size();
+            }
+            throw new IndexOutOfBoundsException(index);
+        }
+        
+        @Override
+        public int size() {
+            return size;
         }
     }
     
     @Override
     public void setString(int parameterIndex, String parameter) throws SQLException {
-        if (parameterIndex != 1) {
-            throw new SQLException("The only valid parameter index is 1");
+        if (parameterIndex < 1 || parameterIndex > plan.getParameterCount()) {
+            throw new SQLException(plan.getParameterCount() == 1 ? "The only valid parameter index is 1" :
+                "Valid parameter indexes are 1 to " + plan.getParameterCount());
         }
         
         String sanitizedParameter = parameter.trim();
+        String profile = null;
         
         // Extract profile, remove profile from lookup key (the profile file will not contain it!)
-        if (parameter.startsWith("%")) {
+        // A pattern matching any key does not name a profile, though.
+        if (parameter.startsWith("%") && !(plan.getShape() == QueryPlan.Shape.SUBTREE && parameter.equals("%"))) {
             if (parameter.contains(".")) {
-                this.profile = parameter.substring(1, parameter.indexOf("."));
+                profile = parameter.substring(1, parameter.indexOf("."));
                 sanitizedParameter = parameter.substring(parameter.indexOf(".") + 1);
             } else {
                 throw new SQLException("Invalid lookup key: contains a profile, but no separating dot");
             }
         }
         
-        queryParts.put(parameterIndex, sanitizedParameter);
+        checkOpen();
+        Parameters current = parameters.get();
+        current.keys[parameterIndex - 1] = sanitizedParameter;
+        current.profiles[parameterIndex - 1] = profile;
     }
     
     @Override
@@ -260,7 +560,9 @@ public class ConfFilePreparedStatement implements PreparedStatement {
     
     @Override
     public void clearParameters() throws SQLException {
-    
+        Parameters current = parameters.get();
+        Arrays.fill(current.keys, null);
+        Arrays.fill(current.profiles, null);
     }
     
     @Override
@@ -450,7 +752,18 @@ public class ConfFilePreparedStatement implements PreparedStatement {
     
     @Override
     public void close() throws SQLException {
+        // There are no resources to release, but the closing thread must not use the statement anymore: other threads
+        // might still use it, and preparing it again hands it out anew
+        parameters.get().closed = true;
+    }
     
+    private void checkOpen() throws SQLException {
+        if (parameters.get().closed) {
+            throw new SQLException("Statement is closed");
+        }
+        if (connection.isClosed()) {
+            throw new SQLException("Connection is closed");
+        }
     }
     
     @Override
@@ -465,12 +778,15 @@ public class ConfFilePreparedStatement implements PreparedStatement {
     
     @Override
     public int getMaxRows() throws SQLException {
-        return 0;
+        return parameters.get().maxRows;
     }
     
     @Override
     public void setMaxRows(int max) throws SQLException {
-    
+        if (max < 0) {
+            throw new SQLException("Invalid maximum number of rows, must not be negative: " + max);
+        }
+        parameters.get().maxRows = max;
     }
     
     @Override
@@ -540,12 +856,16 @@ public class ConfFilePreparedStatement implements PreparedStatement {
     
     @Override
     public void setFetchSize(int rows) throws SQLException {
-        throw new SQLFeatureNotSupportedException("This method is not supported");
+        if (rows < 0) {
+            throw new SQLException("Invalid fetch size, must not be negative: " + rows);
+        }
+        // Only reading all items fetches rows while the cursor moves, other results are small and read at once
+        parameters.get().fetchSize = rows;
     }
     
     @Override
     public int getFetchSize() throws SQLException {
-        throw new SQLFeatureNotSupportedException("This method is not supported");
+        return parameters.get().fetchSize;
     }
     
     @Override
@@ -575,7 +895,7 @@ public class ConfFilePreparedStatement implements PreparedStatement {
     
     @Override
     public Connection getConnection() throws SQLException {
-        return null;
+        return connection;
     }
     
     @Override
@@ -625,17 +945,18 @@ public class ConfFilePreparedStatement implements PreparedStatement {
     
     @Override
     public boolean isClosed() throws SQLException {
-        return false;
+        // Quote: All Statement objects of a connection are closed when the connection is closed
+        return parameters.get().closed || connection.isClosed();
     }
     
     @Override
     public void setPoolable(boolean poolable) throws SQLException {
-        throw new SQLFeatureNotSupportedException("This method is not supported");
+        // Intentionally left blank - statements are cached by their connection and safe to share, so they are always poolable
     }
     
     @Override
     public boolean isPoolable() throws SQLException {
-        return false;
+        return true;
     }
     
     @Override
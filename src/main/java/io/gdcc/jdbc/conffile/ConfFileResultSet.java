@@ -2,6 +2,7 @@ package io.gdcc.jdbc.conffile;
 
 import java.io.InputStream;
 import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.net.URL;
 import java.sql.Array;
@@ -20,29 +21,112 @@ import java.sql.SQLXML;
 import java.sql.Statement;
 import java.sql.Time;
 import java.sql.Timestamp;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * A result set stored by column: every column is an array of values or a view of the items of a snapshot, so there
+ * are no objects per row. Columns are looked up by label in a small table of labels instead of a map.
+ */
 public class ConfFileResultSet implements ResultSet {
     
-    private final Map<String, Integer> columnLabels;
-    private final List<List<String>> results;
+    /**
+     * The values of a column by row (starting with 0)
+     */
+    @FunctionalInterface
+    interface Column {
+        String get(int row);
+    }
+    
+    // The label and the values of column i + 1 are at index i
+    private final String[] labels;
+    private final Column[] columns;
+    private final int size;
     
     // Quote: A ResultSet cursor is initially positioned before the first row.
     private int current = -1;
-    
+    // Only a hint, all rows are in memory already
+    private int fetchSize = 0;
+    
+    ConfFileResultSet(String[] labels, Column[] columns, int size) {
+        this.labels = labels;
+        this.columns = columns;
+        this.size = size;
+    }
+    
+    /**
+     * Create a result set from rows, as before values were stored by column. The value of column i is at index i
+     * of a row, so index 0 of a row is not used.
+     * @param results The rows
+     * @param columnLabels The index of a column (starting with 1) by its label
+     * @deprecated Result sets are created by the driver, storing values by column. The rows are converted into
+     *             columns reading from the rows.
+     */
+    @Deprecated
     public ConfFileResultSet(List<List<String>> results, Map<String, Integer> columnLabels) {
-        this.results = results;
-        this.columnLabels = columnLabels;
+        this(labelsOf(results, columnLabels), columnsOf(results, columnLabels), results.size());
+    }
+    
+    private static int columnCount(List<List<String>> results, Map<String, Integer> columnLabels) {
+        int count = 0;
+        for (Map.Entry<String, Integer> label : columnLabels.entrySet()) {
+            if (label.getValue() < 1) {
+                throw new IllegalArgumentException("Column '" + label.getKey() + "' has index " + label.getValue() + ", the first column is 1");
+            }
+            count = Math.max(count, label.getValue());
+        }
+        for (List<String> row : results) {
+            count = Math.max(count, row.size() - 1);
+        }
+        return count;
+    }
+    
+    private static String[] labelsOf(List<List<String>> results, Map<String, Integer> columnLabels) {
+        String[] labels = new String[columnCount(results, columnLabels)];
+        Arrays.fill(labels, "");
+        columnLabels.forEach((label, index) -> labels[index - 1] = label);
+        return labels;
+    }
+    
+    private static Column[] columnsOf(List<List<String>> results, Map<String, Integer> columnLabels) {
+        Column[] columns = new Column[columnCount(results, columnLabels)];
+        for (int i = 0; i < columns.length; i++) {
+            int index = i + 1;
+            columns[i] = row -> index < results.get(row).size() ? results.get(row).get(index) : null;
+        }
+        return columns;
+    }
+    
+    /**
+     * @return A result set with a single column, e.g. a value or a count
+     */
+    static ConfFileResultSet of(String label, List<String> values) {
+        return new ConfFileResultSet(new String[]{label}, new Column[]{values::get}, values.size());
+    }
+    
+    /**
+     * @param keyLabel The label of the key column, or empty to only have a value column
+     * @return A result set of the items, reading the key or value of an item only when asked for it: adapters may
+     *         decode values lazily, so listing keys only does not decode any value.
+     */
+    static ConfFileResultSet of(String keyLabel, String valueLabel, List<Map.Entry<String, String>> items) {
+        Column values = row -> items.get(row).getValue();
+        if (keyLabel.isEmpty()) {
+            return new ConfFileResultSet(new String[]{valueLabel}, new Column[]{values}, items.size());
+        }
+        return new ConfFileResultSet(new String[]{keyLabel, valueLabel}, new Column[]{row -> items.get(row).getKey(), values}, items.size());
     }
     
     @Override
     public boolean next() throws SQLException {
         // Quote: Moves the cursor forward one row from its current position.
-        current++;
+        if (current < size) {
+            current++;
+        }
         // Quote: When a call to the next method returns false, the cursor is positioned after the last row.
-        return current < results.size();
+        return current < size;
     }
     
     @Override
@@ -52,21 +136,32 @@ public class ConfFileResultSet implements ResultSet {
     
     @Override
     public String getString(int columnIndex) throws SQLException {
-        if (current < results.size()) {
-            List<String> row = results.get(current);
-            if (columnIndex < 0 || columnIndex >= row.size()) {
-                throw new SQLException("Requested column '" + columnIndex + "' does not exist");
-            } else {
-                return row.get(columnIndex);
-            }
-        } else {
+        int row = row();
+        // Quote: the first column is 1, the second is 2, ...
+        if (columnIndex < 1 || columnIndex > columns.length) {
+            throw new SQLException("Requested column '" + columnIndex + "' does not exist");
+        }
+        try {
+            return columns[columnIndex - 1].get(row);
+        } catch (UncheckedIOException | IllegalStateException e) {
+            // Values of lazily decoded rows might fail to decode
+            throw new SQLException(e);
+        }
+    }
+    
+    /**
+     * @return The row the cursor is on, as an index into the columns
+     */
+    int row() throws SQLException {
+        if (current < 0 || current >= size) {
             throw new SQLException("Can't read beyond existing result rows");
         }
+        return current;
     }
     
     @Override
     public String getString(String columnLabel) throws SQLException {
-        return getString(columnLabels.get(columnLabel));
+        return getString(findColumn(columnLabel));
     }
     
     @Override
@@ -91,12 +186,18 @@ public class ConfFileResultSet implements ResultSet {
     
     @Override
     public int getInt(int columnIndex) throws SQLException {
-        throw new SQLFeatureNotSupportedException("This method is not supported");
+        return Math.toIntExact(getLong(columnIndex));
     }
     
     @Override
     public long getLong(int columnIndex) throws SQLException {
-        throw new SQLFeatureNotSupportedException("This method is not supported");
+        // E.g. the result of a COUNT(*)
+        String value = getString(columnIndex);
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new SQLException("Not a number: " + value, e);
+        }
     }
     
     @Override
@@ -166,12 +267,12 @@ public class ConfFileResultSet implements ResultSet {
     
     @Override
     public int getInt(String columnLabel) throws SQLException {
-        throw new SQLFeatureNotSupportedException("This method is not supported");
+        return getInt(findColumn(columnLabel));
     }
     
     @Override
     public long getLong(String columnLabel) throws SQLException {
-        throw new SQLFeatureNotSupportedException("This method is not supported");
+        return getLong(findColumn(columnLabel));
     }
     
     @Override
@@ -256,7 +357,19 @@ public class ConfFileResultSet implements ResultSet {
     
     @Override
     public int findColumn(String columnLabel) throws SQLException {
-        return 0;
+        // There are one or two columns, comparing is faster than hashing
+        for (int i = 0; i < labels.length; i++) {
+            if (labels[i].equals(columnLabel)) {
+                return i + 1;
+            }
+        }
+        // Quote: Column names used as input to getter methods are case insensitive.
+        for (int i = 0; i < labels.length; i++) {
+            if (labels[i].equalsIgnoreCase(columnLabel)) {
+                return i + 1;
+            }
+        }
+        throw new SQLException("Requested column '" + columnLabel + "' does not exist");
     }
     
     @Override
@@ -281,12 +394,13 @@ public class ConfFileResultSet implements ResultSet {
     
     @Override
     public boolean isBeforeFirst() throws SQLException {
-        return this.current < 0;
+        // Quote: a value of false if the cursor is at any other position or the result set contains no rows
+        return size > 0 && this.current < 0;
     }
     
     @Override
     public boolean isAfterLast() throws SQLException {
-        return this.current >= results.size();
+        return size > 0 && this.current >= size;
     }
     
     @Override
@@ -296,7 +410,7 @@ public class ConfFileResultSet implements ResultSet {
     
     @Override
     public boolean isLast() throws SQLException {
-        return this.current == results.size() - 1;
+        return size > 0 && this.current == size - 1;
     }
     
     @Override
@@ -306,19 +420,19 @@ public class ConfFileResultSet implements ResultSet {
     
     @Override
     public void afterLast() throws SQLException {
-        this.current = results.size();
+        this.current = size;
     }
     
     @Override
     public boolean first() throws SQLException {
         this.current = 0;
-        return !results.isEmpty();
+        return size > 0;
     }
     
     @Override
     public boolean last() throws SQLException {
-        this.current = results.size()-1;
-        return !results.isEmpty();
+        this.current = size - 1;
+        return size > 0;
     }
     
     @Override
@@ -353,12 +467,15 @@ public class ConfFileResultSet implements ResultSet {
     
     @Override
     public void setFetchSize(int rows) throws SQLException {
-        throw new SQLFeatureNotSupportedException("This method is not supported");
+        if (rows < 0) {
+            throw new SQLException("Invalid fetch size, must not be negative: " + rows);
+        }
+        this.fetchSize = rows;
     }
     
     @Override
     public int getFetchSize() throws SQLException {
-        throw new SQLFeatureNotSupportedException("This method is not supported");
+        return fetchSize;
     }
     
     @Override
@@ -0,0 +1,380 @@
+package io.gdcc.jdbc.conffile;
+
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The parsed form of a supported SELECT statement. Plans are immutable and cached driver-wide by their SQL,
+ * as config sources tend to prepare the same few statements over and over again: preparing a known statement
+ * is a single map lookup.
+ * <p>
+ * Supported statements look like this (keywords are case-insensitive, the names of the table and columns
+ * can be chosen freely, but a single column can only be the value):
+ * <pre>
+ * SELECT value | key, value | COUNT(*) FROM table
+ *     [WHERE key = ? | WHERE key LIKE ? | WHERE key IN (?, ...)]
+ *     [ORDER BY key [ASC | DESC]] [LIMIT n] [OFFSET m] [;]
+ * </pre>
+ */
+public final class QueryPlan {
+    
+    enum Shape {
+        /**
+         * The value of a single key: {@code WHERE key = ?}
+         */
+        ONE,
+        /**
+         * All keys and values found of many keys: {@code WHERE key IN (?, ...)}
+         */
+        MANY,
+        /**
+         * All keys and values below a key: {@code WHERE key LIKE ?}
+         */
+        SUBTREE,
+        /**
+         * All keys and values of all files of a table
+         */
+        ALL
+    }
+    
+    // Apps only prepare a handful of different statements, don't let a misbehaving one fill the heap
+    private static final int MAX_CACHED_PLANS = 1024;
+    
+    private static final Map<String, QueryPlan> plans = new ConcurrentHashMap<>();
+    private static final LongAdder parses = new LongAdder();
+    
+    private final Shape shape;
+    private final String tableName;
+    private final String keyColumnLabel;
+    private final String valueColumnLabel;
+    private final boolean count;
+    private final boolean sorted;
+    private final boolean descending;
+    private final int limit;
+    private final int offset;
+    private final int parameterCount;
+    
+    private QueryPlan(Parser parser) {
+        this.shape = parser.shape;
+        this.tableName = parser.tableName;
+        this.keyColumnLabel = parser.keyColumnLabel;
+        this.valueColumnLabel = parser.valueColumnLabel;
+        this.count = parser.count;
+        this.sorted = parser.sorted;
+        this.descending = parser.descending;
+        this.limit = parser.limit;
+        this.offset = parser.offset;
+        this.parameterCount = parser.parameterCount;
+    }
+    
+    /**
+     * @return The plan for the statement, parsed only if it has not been seen before
+     * @throws SQLFeatureNotSupportedException When this is not a supported statement
+     * @throws SQLException When the statement cannot be parsed
+     */
+    static QueryPlan of(String sql) throws SQLException {
+        QueryPlan plan = plans.get(sql);
+        if (plan == null) {
+            plan = parse(sql);
+            if (plans.size() < MAX_CACHED_PLANS) {
+                plans.putIfAbsent(sql, plan);
+            }
+        }
+        return plan;
+    }
+    
+    static QueryPlan parse(String sql) throws SQLException {
+        parses.increment();
+        return new Parser(sql).parse();
+    }
+    
+    /**
+     * @return How many times a statement has been parsed, instead of taking its plan from the cache
+     */
+    public static long getParses() {
+        return parses.sum();
+    }
+    
+    Shape getShape() {
+        return shape;
+    }
+    
+    /**
+     * @return The name of the table, which is the base name of its files
+     */
+    String getTableName() {
+        return tableName;
+    }
+    
+    /**
+     * @return The label of the key column, empty if there is none
+     */
+    String getKeyColumnLabel() {
+        return keyColumnLabel;
+    }
+    
+    /**
+     * @return The label of the value column, or of the count when counting
+     */
+    String getValueColumnLabel() {
+        return valueColumnLabel;
+    }
+    
+    /**
+     * @return true if the statement selects {@code COUNT(*)} instead of rows
+     */
+    boolean isCount() {
+        return count;
+    }
+    
+    /**
+     * @return true if the rows are to be returned in the order of their keys, as asked for by
+     *         {@code ORDER BY}, {@code LIMIT} or {@code OFFSET}
+     */
+    boolean isSorted() {
+        return sorted;
+    }
+    
+    boolean isDescending() {
+        return descending;
+    }
+    
+    /**
+     * @return The maximum number of rows, {@link Integer#MAX_VALUE} if there is no limit
+     */
+    int getLimit() {
+        return limit;
+    }
+    
+    int getOffset() {
+        return offset;
+    }
+    
+    /**
+     * @return The number of parameters, at least 1 (for compatibility, a statement without any accepts one)
+     */
+    int getParameterCount() {
+        return parameterCount;
+    }
+    
+    /**
+     * A recursive descent parser on the tokens of a statement: keywords and names, numbers and single characters.
+     */
+    private static final class Parser {
+        private final String sql;
+        private final List<String> tokens = new ArrayList<>();
+        private int next = 0;
+        
+        private Shape shape = Shape.ALL;
+        private String tableName;
+        private String keyColumnLabel = "";
+        private String valueColumnLabel;
+        private boolean count;
+        private boolean sorted;
+        private boolean descending;
+        private int limit = Integer.MAX_VALUE;
+        private int offset = 0;
+        private int parameterCount = 1;
+        
+        Parser(String sql) throws SQLException {
+            this.sql = sql;
+            tokenize();
+        }
+        
+        private void tokenize() throws SQLException {
+            int i = 0;
+            while (i < sql.length()) {
+                char c = sql.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (c == '"' || c == '`') {
+                    // Quoted name, the quotes are not part of the name
+                    int end = sql.indexOf(c, i + 1);
+                    if (end < 0) {
+                        throw new SQLException("Cannot parse query, unterminated name at position " + i + ": " + sql);
+                    }
+                    tokens.add(sql.substring(i, end + 1));
+                    i = end + 1;
+                } else if ("(),;?=*".indexOf(c) >= 0) {
+                    tokens.add(String.valueOf(c));
+                    i++;
+                } else {
+                    int start = i;
+                    while (i < sql.length() && !Character.isWhitespace(sql.charAt(i)) && "(),;?=*\"`".indexOf(sql.charAt(i)) < 0) {
+                        i++;
+                    }
+                    tokens.add(sql.substring(start, i));
+                }
+            }
+        }
+        
+        QueryPlan parse() throws SQLException {
+            if (!isKeyword(peek(), "select")) {
+                throw new SQLFeatureNotSupportedException("Only SELECT statements are supported");
+            }
+            next++;
+            
+            List<String> columns = new ArrayList<>();
+            if (isKeyword(peek(), "count") && "(".equals(peek(1))) {
+                String keyword = take();
+                expect("(");
+                expect("*");
+                expect(")");
+                this.count = true;
+                columns.add(keyword + "(*)");
+            } else {
+                columns.add(name());
+                while (accept(",")) {
+                    columns.add(name());
+                }
+            }
+            if (columns.size() > 2) {
+                throw unsupported("Select the value or the key and the value");
+            }
+            this.valueColumnLabel = columns.get(columns.size() - 1);
+            
+            expectKeyword("from");
+            this.tableName = name();
+            
+            String whereColumn = null;
+            if (acceptKeyword("where")) {
+                whereColumn = name();
+                if (accept("=")) {
+                    expect("?");
+                    this.shape = Shape.ONE;
+                } else if (acceptKeyword("like")) {
+                    expect("?");
+                    this.shape = Shape.SUBTREE;
+                } else if (acceptKeyword("in")) {
+                    expect("(");
+                    expect("?");
+                    int parameters = 1;
+                    while (accept(",")) {
+                        expect("?");
+                        parameters++;
+                    }
+                    expect(")");
+                    this.shape = Shape.MANY;
+                    this.parameterCount = parameters;
+                } else {
+                    throw unsupported("Only =, LIKE and IN are supported in WHERE");
+                }
+            }
+            
+            if (acceptKeyword("order")) {
+                expectKeyword("by");
+                String orderColumn = name();
+                if (!this.count && orderColumn.equalsIgnoreCase(this.valueColumnLabel)) {
+                    throw unsupported("Only ordering by key is supported");
+                }
+                this.descending = acceptKeyword("desc");
+                if (!this.descending) {
+                    acceptKeyword("asc");
+                }
+                this.sorted = true;
+            }
+            if (acceptKeyword("limit")) {
+                this.limit = number("LIMIT");
+                this.sorted = true;
+            }
+            if (acceptKeyword("offset")) {
+                this.offset = number("OFFSET");
+                this.sorted = true;
+            }
+            accept(";");
+            if (peek() != null) {
+                throw unsupported("Unexpected " + peek());
+            }
+            
+            // Rows of single values have no key, rows of many values tell which keys have been found: use the
+            // column of the where clause, if not selected anyway
+            if (columns.size() > 1 && this.shape != Shape.ONE) {
+                this.keyColumnLabel = columns.get(0);
+            } else if (this.shape == Shape.MANY) {
+                this.keyColumnLabel = whereColumn;
+            }
+            return new QueryPlan(this);
+        }
+        
+        private String peek() {
+            return peek(0);
+        }
+        
+        private String peek(int ahead) {
+            return next + ahead < tokens.size() ? tokens.get(next + ahead) : null;
+        }
+        
+        private String take() throws SQLException {
+            if (next >= tokens.size()) {
+                throw new SQLException("Cannot parse query, unexpected end: " + sql);
+            }
+            return tokens.get(next++);
+        }
+        
+        private boolean accept(String token) {
+            if (token.equals(peek())) {
+                next++;
+                return true;
+            }
+            return false;
+        }
+        
+        private boolean acceptKeyword(String keyword) {
+            if (isKeyword(peek(), keyword)) {
+                next++;
+                return true;
+            }
+            return false;
+        }
+        
+        private void expect(String token) throws SQLException {
+            if (!accept(token)) {
+                throw new SQLException("Cannot parse query, expected " + token + " instead of " + peek() + ": " + sql);
+            }
+        }
+        
+        private void expectKeyword(String keyword) throws SQLException {
+            if (!acceptKeyword(keyword)) {
+                throw new SQLException("Cannot parse query, expected " + keyword.toUpperCase(Locale.ROOT) + " instead of " + peek() + ": " + sql);
+            }
+        }
+        
+        private String name() throws SQLException {
+            String token = take();
+            if (token.startsWith("\"") || token.startsWith("`")) {
+                return token.substring(1, token.length() - 1);
+            }
+            if (token.length() == 1 && "(),;?=*".contains(token)) {
+                throw new SQLException("Cannot parse query, expected a name instead of " + token + ": " + sql);
+            }
+            return token;
+        }
+        
+        private int number(String clause) throws SQLException {
+            String token = take();
+            try {
+                int number = Integer.parseInt(token);
+                if (number >= 0) {
+                    return number;
+                }
+            } catch (NumberFormatException e) {
+                // Intentionally left blank - handled below
+            }
+            throw new SQLException("Invalid " + clause + ", must be a number: " + token);
+        }
+        
+        private SQLException unsupported(String reason) {
+            return new SQLFeatureNotSupportedException(reason + ": " + sql);
+        }
+        
+        private static boolean isKeyword(String token, String keyword) {
+            return token != null && token.equalsIgnoreCase(keyword);
+        }
+    }
+}
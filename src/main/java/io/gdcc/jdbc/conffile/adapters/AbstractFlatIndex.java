@@ -0,0 +1,185 @@
+package io.gdcc.jdbc.conffile.adapters;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * Base for indexes numbering their items from 0 to size - 1, decoding keys and values only when they are read.
+ * Takes care of the key prefix and of the {@link java.util.Map} view, e.g. iterating over all entries and
+ * reading their keys only does not decode any value.
+ */
+abstract class AbstractFlatIndex extends AbstractMap<String, String> implements FlatIndex {
+    
+    protected final String prefix;
+    
+    AbstractFlatIndex(String prefix) {
+        this.prefix = prefix;
+    }
+    
+    /**
+     * @param key A key without prefix
+     * @return The number of the item with this key, or a negative number if there is none
+     */
+    abstract int find(String key);
+    
+    /**
+     * @return The key of an item, without prefix
+     */
+    abstract String key(int item);
+    
+    abstract String value(int item);
+    
+    /**
+     * @return true if the items are numbered in the order of their keys (see {@link #compareKeys(String, String)}),
+     *         so all keys starting with the same prefix are numbered consecutively
+     */
+    boolean isSorted() {
+        return false;
+    }
+    
+    /**
+     * @return The items of a sorted index in the order of their keys, decoding keys and values only when they are read
+     */
+    List<Entry<String, String>> sortedEntries() {
+        if (!isSorted()) {
+            throw new UnsupportedOperationException("Index is not sorted");
+        }
+        return new SortedEntries();
+    }
+    
+    /**
+     * Compare keys in the order of their UTF-8 bytes, which is the order of their code points. It only differs
+     * from {@link String#compareTo(String)} for characters beyond the basic multilingual plane.
+     */
+    static int compareKeys(String a, String b) {
+        int common = Math.min(a.length(), b.length());
+        for (int i = 0; i < common; i++) {
+            char ca = a.charAt(i);
+            char cb = b.charAt(i);
+            if (ca != cb) {
+                // Surrogates encode code points beyond any other character
+                if (Character.isSurrogate(ca) != Character.isSurrogate(cb)) {
+                    return Character.isSurrogate(ca) ? 1 : -1;
+                }
+                return ca - cb;
+            }
+        }
+        return a.length() - b.length();
+    }
+    
+    @Override
+    public boolean containsKey(Object key) {
+        return findPrefixed(key) >= 0;
+    }
+    
+    @Override
+    public String get(Object key) {
+        int item = findPrefixed(key);
+        return item >= 0 ? value(item) : null;
+    }
+    
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return entries(0, size());
+    }
+    
+    private Set<Entry<String, String>> entries(int from, int to) {
+        return new AbstractSet<>() {
+            @Override
+            public int size() {
+                return to - from;
+            }
+            
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new Iterator<>() {
+                    private int item = from;
+                    
+                    @Override
+                    public boolean hasNext() {
+                        return item < to;
+                    }
+                    
+                    @Override
+                    public Entry<String, String> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        return new LazyEntry(item++);
+                    }
+                };
+            }
+        };
+    }
+    
+    private int findPrefixed(Object key) {
+        if (!(key instanceof String) || !((String) key).startsWith(prefix)) {
+            return -1;
+        }
+        return find(((String) key).substring(prefix.length()));
+    }
+    
+    private final class SortedEntries extends AbstractList<Entry<String, String>> implements RandomAccess {
+        @Override
+        public Entry<String, String> get(int item) {
+            return new LazyEntry(Objects.checkIndex(item, size()));
+        }
+        
+        @Override
+        public int size() {
+            return AbstractFlatIndex.this.size();
+        }
+    }
+    
+    /**
+     * Decodes its key and value only when asked for them.
+     */
+    private final class LazyEntry implements Entry<String, String> {
+        private final int item;
+        
+        LazyEntry(int item) {
+            this.item = item;
+        }
+        
+        @Override
+        public String getKey() {
+            return prefix.isEmpty() ? key(item) : prefix + key(item);
+        }
+        
+        @Override
+        public String getValue() {
+            return value(item);
+        }
+        
+        @Override
+        public String setValue(String value) {
+            throw new UnsupportedOperationException();
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> other = (Entry<?, ?>) o;
+            return getKey().equals(other.getKey()) && getValue().equals(other.getValue());
+        }
+        
+        @Override
+        public int hashCode() {
+            return getKey().hashCode() ^ getValue().hashCode();
+        }
+        
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+}
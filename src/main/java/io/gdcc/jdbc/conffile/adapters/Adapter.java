@@ -3,23 +3,47 @@ package io.gdcc.jdbc.conffile.adapters;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public abstract class Adapter implements AutoCloseable {
     
+    private static final Logger logger = Logger.getLogger(Adapter.class.getName());
+    
     public static final class Factory {
         private Factory() {
             // Intentionally left blank - factory pattern here
         }
         
-        public static Adapter create(String type, Path directory, String basename, String profile) throws IOException, SQLException {
+        // Has no file to read, so all lookups come up empty
+        private static final Adapter EMPTY = new TomlAdapter();
+        
+        /**
+         * Retrieve an adapter for the given file. Adapters are shared, read-only snapshots of the file's content
+         * and get cached process-wide until the file changes (see {@link SnapshotCache}). As they are shared,
+         * callers must not close them.
+         * @throws FileNotFoundException When there is no such file, unless the options say to treat it as empty
+         */
+        public static Adapter create(String type, Path directory, String basename, String profile, AdapterOptions options) throws IOException, SQLException {
             if (type.equals("toml")) {
-                return new TomlAdapter(directory, basename, profile);
+                String pathAndBasename = composePathAndBaseName(directory.toAbsolutePath().toString(), basename, profile);
+                if (options.getMissingFile() == AdapterOptions.MissingFile.EMPTY &&
+                        ProfileCatalog.resolve(directory, basename + (profile != null ? "-" + profile : ""), suffixesForType(type)) == null) {
+                    return EMPTY;
+                }
+                return SnapshotCache.get(
+                    new SnapshotCache.Key(type, pathAndBasename, profile, options.getParser(), options.getIndex()),
+                    directory,
+                    () -> new TomlAdapter().validate(pathAndBasename),
+                    file -> new TomlAdapter(pathAndBasename, file, profile, options));
             }
             throw new SQLFeatureNotSupportedException("Unsupported adapter type: " + type);
         }
@@ -49,29 +73,48 @@ public abstract class Adapter implements AutoCloseable {
         }
     }
     
+    /**
+     * The order of keys in {@link #readSortedItems()}: the order of their UTF-8 bytes
+     */
+    public static final Comparator<String> KEY_ORDER = AbstractFlatIndex::compareKeys;
+    
     protected final String pathAndBasename;
     protected final Path file;
     protected final String profile;
+    protected final AdapterOptions options;
+    
+    // Flattened view of the file, keyed by dotted path, once as found in the file and once with the profile prefix
+    private Map<String, String> items = Map.of();
+    private Map<String, String> profiledItems = Map.of();
+    // Answers most lookups of absent keys without touching the items
+    private BloomFilter filter = BloomFilter.EMPTY;
+    // Sorted keys of items without an order of their own, built when first looking for keys starting with a prefix
+    private volatile SortedKeys sortedKeys;
     
     Adapter() {
         this.pathAndBasename = null;
         this.file = null;
         this.profile = null;
+        this.options = null;
     }
     
-    Adapter(Path directory, String basename, String profile) throws IOException {
-        this.pathAndBasename = Factory.composePathAndBaseName(directory.toAbsolutePath().toString(), basename, profile);
-        this.file = validate(this.pathAndBasename);
+    Adapter(String pathAndBasename, Path file, String profile, AdapterOptions options) throws IOException {
+        this.pathAndBasename = pathAndBasename;
+        this.file = file;
         this.profile = profile;
+        this.options = options;
         load();
     }
     
+    /**
+     * Find the file for the given path and base name, looking it up in the (cached) {@link ProfileCatalog}
+     * of its directory.
+     */
     public Path validate(String pathAndBasename) throws IOException {
-        for (String suffix : validSuffixes()) {
-            Path candidate = Path.of(pathAndBasename + "." + suffix);
-            if (Files.isRegularFile(candidate) && Files.isReadable(candidate)) {
-                return candidate;
-            }
+        Path path = Path.of(pathAndBasename);
+        Path file = ProfileCatalog.resolve(path.getParent(), path.getFileName().toString(), validSuffixes());
+        if (file != null) {
+            return file;
         }
         // No file found? Error out!
         throw new FileNotFoundException("Cannot find or read a file " + pathAndBasename + "." +
@@ -79,9 +122,104 @@ public abstract class Adapter implements AutoCloseable {
         );
     }
     
+    /**
+     * @return true if the adapter keeps serving the version of the file it has loaded after the file has changed,
+     * false if it reads values from the file itself (like a memory-mapped file)
+     */
+    boolean isDetachedFromFile() {
+        return !(items instanceof FlatIndex && ((FlatIndex) items).readsSourceFile());
+    }
+    
+    /**
+     * Publish the flattened view of the loaded file. All lookups are served from this index, which is built
+     * only once per loaded file: single item lookups are a hash lookup and all items are handed out without
+     * copying. A {@link FlatIndex} is used as is, without copying it at all.
+     * @param flattened Dotted key paths (without any profile prefix) mapped to their string values
+     */
+    protected void index(Map<String, String> flattened) {
+        BloomFilter stored = flattened instanceof FlatIndex ? ((FlatIndex) flattened).filter() : null;
+        this.filter = stored != null ? stored : BloomFilter.of(flattened.keySet());
+        
+        if (flattened instanceof FlatIndex) {
+            FlatIndex index = (FlatIndex) flattened;
+            this.items = index;
+            this.profiledItems = this.profile == null ? index : index.withPrefix("%" + this.profile + ".");
+            return;
+        }
+        FlatIndex compact = null;
+        if (this.options != null && this.options.getIndex() == AdapterOptions.Index.PERFECT) {
+            try {
+                compact = PerfectHashIndex.of(flattened);
+            } catch (IllegalStateException e) {
+                logger.log(Level.WARNING, "Cannot build a perfect hash index for " + this.file + ", using a hash map instead", e);
+            }
+        } else if (this.options != null && this.options.getIndex() == AdapterOptions.Index.FRONTCODED) {
+            compact = FrontCodedIndex.of(flattened);
+        }
+        if (compact != null) {
+            this.items = compact;
+            this.profiledItems = this.profile == null ? compact : compact.withPrefix("%" + this.profile + ".");
+            return;
+        }
+        
+        this.items = Collections.unmodifiableMap(new HashMap<>(flattened));
+        if (this.profile == null) {
+            this.profiledItems = this.items;
+        } else {
+            String prefix = "%" + this.profile + ".";
+            Map<String, String> prefixed = new HashMap<>(flattened.size() * 4 / 3 + 1);
+            flattened.forEach((key, value) -> prefixed.put(prefix + key, value));
+            this.profiledItems = Collections.unmodifiableMap(prefixed);
+        }
+    }
+    
     public abstract List<String> validSuffixes();
     public abstract void load() throws IOException;
-    public abstract String readItem(String itemName);
-    public abstract Map<String,String> readAllItems();
     
+    public String readItem(String itemName) {
+        boolean passed = filter.mightContain(itemName);
+        String value = passed ? items.get(itemName) : null;
+        BloomFilter.record(passed, value != null);
+        return value;
+    }
+    
+    /**
+     * @return The filter of this snapshot's keys, e.g. to look at its expected false positive rate
+     */
+    public BloomFilter getFilter() {
+        return filter;
+    }
+    
+    public Map<String,String> readAllItems() {
+        return profiledItems;
+    }
+    
+    /**
+     * Read all items in the order of their keys, e.g. to page through them: sorted indexes are read in place, the keys
+     * of other indexes are sorted once per snapshot. Items are only read when asked for.
+     * @return The items in the order of their keys, keyed like in {@link #readAllItems()}
+     */
+    public List<Map.Entry<String, String>> readSortedItems() {
+        if (profiledItems instanceof AbstractFlatIndex && ((AbstractFlatIndex) profiledItems).isSorted()) {
+            return ((AbstractFlatIndex) profiledItems).sortedEntries();
+        }
+        SortedKeys sorted = this.sortedKeys;
+        if (sorted == null) {
+            // Sorting twice when racing with another thread does no harm
+            sorted = new SortedKeys(items.keySet());
+            this.sortedKeys = sorted;
+        }
+        return sorted.entries(items, this.profile == null ? "" : "%" + this.profile + ".");
+    }
+    
+    /**
+     * Read all items with keys starting with the given prefix, e.g. all keys of a table, without looking at any
+     * other key: the range of matching items is found by binary search in the {@link #readSortedItems() sorted items}.
+     * @param keyPrefix A prefix of the keys, without any profile prefix
+     * @return The matching items in the order of their keys, keyed like in {@link #readAllItems()}
+     */
+    public List<Map.Entry<String, String>> readItemsStartingWith(String keyPrefix) {
+        return SortedKeys.startingWith(readSortedItems(), this.profile == null ? keyPrefix : "%" + this.profile + "." + keyPrefix);
+    }
+
 }
@@ -0,0 +1,234 @@
+package io.gdcc.jdbc.conffile.adapters;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * Options for reading config files, given as connection properties or as parameters of the connection URL,
+ * e.g. {@code jdbc:conffile:toml:///etc/dataverse?changeDetection=watch}.
+ */
+public final class AdapterOptions {
+    
+    public enum ChangeDetection {
+        /**
+         * Check size and last modified time of a file with every lookup (default)
+         */
+        STAT,
+        /**
+         * Watch the directory for changes, serve lookups from memory in between (see {@link DirectoryWatcher})
+         */
+        WATCH,
+        /**
+         * Poll the directory and its files for changes, serve lookups from memory in between (see {@link DirectoryPoller})
+         */
+        POLL
+    }
+    
+    public enum Index {
+        /**
+         * Keep the flattened items in a hash map (default)
+         */
+        HASHMAP,
+        /**
+         * Keep the flattened items in a minimal perfect hash (see {@link PerfectHashIndex})
+         */
+        PERFECT,
+        /**
+         * Keep the keys in a prefix compressed, sorted dictionary with binary search lookups (see {@link FrontCodedIndex})
+         */
+        FRONTCODED
+    }
+    
+    public enum MissingFile {
+        /**
+         * Fail when there is no file for a table and profile (default)
+         */
+        FAIL,
+        /**
+         * Treat a missing file like an empty one, e.g. for profiles without a file
+         */
+        EMPTY
+    }
+    
+    public enum Parser {
+        /**
+         * Parse into a tree of config objects with night-config and flatten the tree (default)
+         */
+        NIGHTCONFIG,
+        /**
+         * Flatten while parsing, without building a tree (see {@link StreamingTomlParser})
+         */
+        STREAMING,
+        /**
+         * Memory-map the file and only index where values are, decoding them when read (see {@link MappedTomlIndex})
+         */
+        MAPPED,
+        /**
+         * Compile the file into a binary index file once, and map that index without parsing (see {@link CompiledIndex})
+         */
+        COMPILED,
+        /**
+         * Parse into a tree of JSON nodes with jackson-dataformat-toml and flatten the tree (needs Jackson on the classpath)
+         */
+        JACKSON
+    }
+    
+    public static final String CHANGE_DETECTION = "changeDetection";
+    public static final String POLL_INTERVAL = "pollInterval";
+    public static final String POLL_MAX_INTERVAL = "pollMaxInterval";
+    public static final String PARSER = "parser";
+    public static final String MISSING_FILE = "missingFile";
+    public static final String INDEX = "index";
+    public static final String INDEX_DIRECTORY = "indexDirectory";
+    public static final String SHARED_INDEX = "sharedIndex";
+    
+    private final ChangeDetection changeDetection;
+    private final long pollInterval;
+    private final long pollMaxInterval;
+    private final Parser parser;
+    private final MissingFile missingFile;
+    private final Index index;
+    private final Path indexDirectory;
+    private final boolean sharedIndex;
+    
+    public AdapterOptions(Properties properties) throws SQLException {
+        this.changeDetection = parseEnum(ChangeDetection.class, properties, CHANGE_DETECTION, ChangeDetection.STAT);
+        this.pollInterval = parsePositiveLong(properties, POLL_INTERVAL, 2000);
+        this.pollMaxInterval = parsePositiveLong(properties, POLL_MAX_INTERVAL, 30000);
+        this.parser = parseEnum(Parser.class, properties, PARSER, Parser.NIGHTCONFIG);
+        if (this.parser == Parser.JACKSON && !isAvailable(JacksonBackend.MAPPER_CLASS)) {
+            throw new SQLException("Cannot use parser " + properties.getProperty(PARSER) + ", Jackson TOML is not on the classpath");
+        }
+        this.missingFile = parseEnum(MissingFile.class, properties, MISSING_FILE, MissingFile.FAIL);
+        this.index = parseEnum(Index.class, properties, INDEX, Index.HASHMAP);
+        String indexDirectory = properties.getProperty(INDEX_DIRECTORY);
+        this.indexDirectory = indexDirectory == null || indexDirectory.isBlank() ?
+            defaultIndexDirectory() : Path.of(indexDirectory.trim());
+        this.sharedIndex = parseBoolean(properties, SHARED_INDEX, false);
+    }
+    
+    public ChangeDetection getChangeDetection() {
+        return changeDetection;
+    }
+    
+    /**
+     * @return Milliseconds between two polls right after a change has been detected
+     */
+    public long getPollInterval() {
+        return pollInterval;
+    }
+    
+    /**
+     * @return Milliseconds between two polls when nothing changed for a while
+     */
+    public long getPollMaxInterval() {
+        return pollMaxInterval;
+    }
+    
+    public Parser getParser() {
+        return parser;
+    }
+    
+    /**
+     * @return How to keep the flattened items of a file, unless the parser provides its own index (like mapped or compiled)
+     */
+    public Index getIndex() {
+        return index;
+    }
+    
+    public MissingFile getMissingFile() {
+        return missingFile;
+    }
+    
+    /**
+     * @return Where to put the compiled index files when using {@link Parser#COMPILED}
+     */
+    public Path getIndexDirectory() {
+        return indexDirectory;
+    }
+    
+    /**
+     * @return true if the compiled index files are shared with other JVMs (see {@link CompiledTomlBackend})
+     */
+    public boolean isSharedIndex() {
+        return sharedIndex;
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof AdapterOptions)) {
+            return false;
+        }
+        AdapterOptions other = (AdapterOptions) o;
+        return changeDetection == other.changeDetection && pollInterval == other.pollInterval &&
+            pollMaxInterval == other.pollMaxInterval && parser == other.parser && missingFile == other.missingFile &&
+            index == other.index && indexDirectory.equals(other.indexDirectory) && sharedIndex == other.sharedIndex;
+    }
+    
+    @Override
+    public int hashCode() {
+        return Objects.hash(changeDetection, pollInterval, pollMaxInterval, parser, missingFile, index, indexDirectory, sharedIndex);
+    }
+    
+    static Path defaultIndexDirectory() {
+        // Per user: the index directory must be owned by the user reading the index files
+        return Path.of(System.getProperty("java.io.tmpdir"), "conffile-index-" + System.getProperty("user.name"));
+    }
+    
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, Properties properties, String name, E defaultValue) throws SQLException {
+        String value = properties.getProperty(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new SQLException("Invalid value for " + name + ": " + value);
+        }
+    }
+    
+    private static boolean parseBoolean(Properties properties, String name, boolean defaultValue) throws SQLException {
+        String value = properties.getProperty(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        if (value.trim().equalsIgnoreCase("true")) {
+            return true;
+        }
+        if (value.trim().equalsIgnoreCase("false")) {
+            return false;
+        }
+        throw new SQLException("Invalid value for " + name + ", must be true or false: " + value);
+    }
+    
+    private static boolean isAvailable(String className) {
+        try {
+            Class.forName(className, false, AdapterOptions.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+    
+    private static long parsePositiveLong(Properties properties, String name, long defaultValue) throws SQLException {
+        String value = properties.getProperty(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            long parsed = Long.parseLong(value.trim());
+            if (parsed > 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // Intentionally left blank - handled below
+        }
+        throw new SQLException("Invalid value for " + name + ", must be a positive number: " + value);
+    }
+}
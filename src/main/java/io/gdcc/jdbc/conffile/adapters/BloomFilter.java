@@ -0,0 +1,179 @@
+package io.gdcc.jdbc.conffile.adapters;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compact membership sketch of the keys of a snapshot. Most lookups are misses (MicroProfile Config asks every
+ * config source for every key), and the filter answers most of them without looking at the index at all.
+ * <p>
+ * The filter never says a key is absent when it is present, but may say a key might be present when it is not
+ * (a false positive), with a probability of about {@link #FALSE_POSITIVE_RATE}. The hash of a key only depends
+ * on its characters, so a filter can be stored in a file and be read by another JVM.
+ */
+public final class BloomFilter {
+    
+    public static final double FALSE_POSITIVE_RATE = 0.01;
+    static final BloomFilter EMPTY = of(List.of());
+    
+    private static final LongAdder negatives = new LongAdder();
+    private static final LongAdder positives = new LongAdder();
+    private static final LongAdder falsePositives = new LongAdder();
+    
+    private final long[] bits;
+    private final int hashes;
+    private final int keys;
+    
+    private BloomFilter(long[] bits, int hashes, int keys) {
+        this.bits = bits;
+        this.hashes = hashes;
+        this.keys = keys;
+    }
+    
+    static BloomFilter of(Collection<String> keys) {
+        int n = Math.max(1, keys.size());
+        // Optimal size and number of hash functions for the wanted false positive rate
+        long size = (long) Math.ceil(-n * Math.log(FALSE_POSITIVE_RATE) / (Math.log(2) * Math.log(2)));
+        int hashes = Math.max(1, (int) Math.round((double) size / n * Math.log(2)));
+        BloomFilter filter = new BloomFilter(new long[(int) Math.min(Integer.MAX_VALUE - 8, (size + 63) / 64)], hashes, keys.size());
+        for (String key : keys) {
+            filter.add(key);
+        }
+        return filter;
+    }
+    
+    /**
+     * Read a filter written by {@link #write(DataOutput)}.
+     */
+    static BloomFilter read(ByteBuffer buffer, int offset) {
+        int hashes = buffer.getInt(offset);
+        int keys = buffer.getInt(offset + 4);
+        long[] bits = new long[buffer.getInt(offset + 8)];
+        buffer.duplicate().position(offset + 12).asLongBuffer().get(bits);
+        return new BloomFilter(bits, hashes, keys);
+    }
+    
+    /**
+     * @return Number of bytes a filter stored at the offset occupies, or -1 if it does not fit into the buffer
+     */
+    static long storedSize(ByteBuffer buffer, int offset) {
+        if (offset < 0 || (long) offset + 12 > buffer.limit()) {
+            return -1;
+        }
+        long size = 12 + 8L * buffer.getInt(offset + 8);
+        return buffer.getInt(offset + 8) >= 0 && offset + size <= buffer.limit() ? size : -1;
+    }
+    
+    void write(DataOutput out) throws IOException {
+        out.writeInt(hashes);
+        out.writeInt(keys);
+        out.writeInt(bits.length);
+        for (long word : bits) {
+            out.writeLong(word);
+        }
+    }
+    
+    /**
+     * @return false if the key is definitely absent, true if it might be present
+     */
+    boolean mightContain(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long size = bits.length * 64L;
+        for (int i = 1; i <= hashes; i++) {
+            int combined = h1 + i * h2;
+            long bit = (combined & Integer.MAX_VALUE) % size;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Record the outcome of a lookup, see {@link #getNegatives()} and friends.
+     * @param passed Whether the filter let the lookup pass
+     * @param found Whether the key was found in the index
+     */
+    static void record(boolean passed, boolean found) {
+        if (!passed) {
+            negatives.increment();
+        } else if (found) {
+            positives.increment();
+        } else {
+            falsePositives.increment();
+        }
+    }
+    
+    /**
+     * @return The false positive rate to expect for this filter, given its size and number of keys
+     */
+    public double getExpectedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-hashes * (double) keys / (bits.length * 64.0)), hashes);
+    }
+    
+    /**
+     * @return How many lookups of absent keys have been answered by a filter, without looking at the index
+     */
+    public static long getNegatives() {
+        return negatives.sum();
+    }
+    
+    /**
+     * @return How many lookups passed a filter and found their key
+     */
+    public static long getPositives() {
+        return positives.sum();
+    }
+    
+    /**
+     * @return How many lookups passed a filter, but did not find their key
+     */
+    public static long getFalsePositives() {
+        return falsePositives.sum();
+    }
+    
+    /**
+     * @return The share of lookups of absent keys which passed a filter anyway
+     */
+    public static double getObservedFalsePositiveRate() {
+        long falsePositiveCount = getFalsePositives();
+        long absent = falsePositiveCount + getNegatives();
+        return absent == 0 ? 0 : (double) falsePositiveCount / absent;
+    }
+    
+    private void add(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long size = bits.length * 64L;
+        for (int i = 1; i <= hashes; i++) {
+            int combined = h1 + i * h2;
+            long bit = (combined & Integer.MAX_VALUE) % size;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+    
+    /**
+     * 64-bit FNV-1a over the characters of the key, finished with the mixer of MurmurHash3. Two 32-bit hashes
+     * derived from it are combined into all the hashes needed (Kirsch-Mitzenmacher).
+     */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
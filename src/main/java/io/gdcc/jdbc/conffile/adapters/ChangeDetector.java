@@ -0,0 +1,121 @@
+package io.gdcc.jdbc.conffile.adapters;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Detects changes within a config directory in the background. Every detected change bumps the detector's
+ * generation, which invalidates all cached snapshots of files within this directory (see {@link SnapshotCache}).
+ * As long as the generation does not change, cached snapshots are served from memory only, without checking
+ * the files on disk.
+ * <p>
+ * There is at most one detector per directory, shared by all connections using it.
+ */
+public abstract class ChangeDetector {
+    
+    private static final Logger logger = Logger.getLogger(ChangeDetector.class.getName());
+    private static final Map<Path, ChangeDetector> detectors = new ConcurrentHashMap<>();
+    
+    protected final Path directory;
+    private final AtomicLong generation = new AtomicLong();
+    
+    ChangeDetector(Path directory) {
+        this.directory = directory;
+    }
+    
+    /**
+     * Start detecting changes within the given directory as configured, unless there already is a detector for it.
+     * A detector of another kind is kept, logging a warning.
+     * @param directory The config directory
+     * @param options The options of the connection to the directory
+     * @throws IOException When the directory cannot be watched
+     */
+    public static void start(Path directory, AdapterOptions options) throws IOException {
+        if (options.getChangeDetection() == AdapterOptions.ChangeDetection.STAT) {
+            return;
+        }
+        
+        ChangeDetector detector;
+        try {
+            detector = detectors.computeIfAbsent(normalize(directory), dir -> {
+                try {
+                    return options.getChangeDetection() == AdapterOptions.ChangeDetection.WATCH ?
+                        new DirectoryWatcher(dir) :
+                        new DirectoryPoller(dir, options.getPollInterval(), options.getPollMaxInterval());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        
+        if (!detector.supports(options.getChangeDetection())) {
+            // The first connection to a directory decides for all others, a conflicting option is most likely a mistake
+            logger.log(Level.WARNING, "Directory {0} is already checked for changes by a {1}, ignoring conflicting option changeDetection={2}",
+                new Object[]{directory, detector.getClass().getSimpleName(), options.getChangeDetection()});
+        }
+    }
+    
+    /**
+     * Stop detecting changes within the given directory, e.g. when nobody uses it anymore. Cached snapshots of its
+     * files will be checked on disk again.
+     * @param directory The config directory
+     */
+    public static void stop(Path directory) {
+        ChangeDetector detector = detectors.get(normalize(directory));
+        if (detector != null) {
+            detector.stop();
+            detector.shutDown();
+        }
+    }
+    
+    static ChangeDetector forDirectory(Path directory) {
+        return detectors.isEmpty() ? null : detectors.get(normalize(directory));
+    }
+    
+    long generation() {
+        return generation.get();
+    }
+    
+    /**
+     * Called when a snapshot of a file within the directory has been loaded.
+     * @param file The loaded file
+     * @param attributes The attributes of the file at the time it was loaded
+     */
+    void track(Path file, BasicFileAttributes attributes) {
+        // Intentionally left blank - only needed by detectors looking at individual files
+    }
+    
+    abstract boolean supports(AdapterOptions.ChangeDetection changeDetection);
+    
+    void changed() {
+        generation.incrementAndGet();
+    }
+    
+    /**
+     * Stop using this detector. All cached snapshots of the directory will be checked on disk again.
+     */
+    void stop() {
+        detectors.remove(directory, this);
+        changed();
+    }
+    
+    /**
+     * Release the resources used to detect changes, like threads or watch services.
+     */
+    void shutDown() {
+        // Intentionally left blank - only needed by detectors holding resources
+    }
+    
+    private static Path normalize(Path directory) {
+        return directory.toAbsolutePath().normalize();
+    }
+}
@@ -0,0 +1,246 @@
+package io.gdcc.jdbc.conffile.adapters;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A flattened file compiled into a binary index file, which is memory-mapped and served without any parsing.
+ * The layout (all numbers big endian) is:
+ * <pre>
+ * int magic, int version, long source size, long source last modified, long source checksum, long generation,
+ * int count, int filter offset, int source path length
+ * count * (int key offset, int key length, int value offset, int value length), sorted by key
+ * UTF-8 bytes of the real path of the source file
+ * UTF-8 bytes of all keys and values
+ * a {@link BloomFilter} of all keys
+ * </pre>
+ * Keys are sorted by their UTF-8 bytes, so a lookup is a binary search on the mapped bytes. Keys and values
+ * are decoded when read. The generation counts how many times the index file has been compiled. The source path
+ * makes sure an index file is only ever used for the file it has been compiled from.
+ */
+final class CompiledIndex extends AbstractFlatIndex {
+    
+    static final int MAGIC = 0x43464958; // "CFIX"
+    static final int VERSION = 4;
+    private static final int HEADER_SIZE = 52;
+    private static final int ENTRY_SIZE = 16;
+    
+    private final ByteBuffer buffer;
+    private final Path file;
+    private final int count;
+    
+    private CompiledIndex(ByteBuffer buffer, Path file, int count, String prefix) {
+        super(prefix);
+        this.buffer = buffer;
+        this.file = file;
+        this.count = count;
+    }
+    
+    /**
+     * Map a compiled index file. Check {@link #hasSourceStamp(long, long)} or {@link #hasSourceChecksum(long, long)}
+     * before using it.
+     * @param indexFile The compiled index file
+     * @param source The real path of the source file
+     * @return The index, or null if there is no (valid) index file compiled from this source file
+     */
+    static CompiledIndex open(Path indexFile, Path source) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            return null;
+        }
+        int count = buffer.getInt(40);
+        if (count < 0 || HEADER_SIZE + (long) count * ENTRY_SIZE > buffer.limit()) {
+            return null;
+        }
+        if (BloomFilter.storedSize(buffer, buffer.getInt(44)) < 0) {
+            return null;
+        }
+        int sourceOffset = HEADER_SIZE + count * ENTRY_SIZE;
+        if (!isInBounds(buffer, sourceOffset, buffer.getInt(48)) ||
+            !source.toString().equals(MappedTomlIndex.decode(buffer, sourceOffset, sourceOffset + buffer.getInt(48)))) {
+            return null;
+        }
+        for (int i = 0; i < count; i++) {
+            int entry = HEADER_SIZE + i * ENTRY_SIZE;
+            if (!isInBounds(buffer, buffer.getInt(entry), buffer.getInt(entry + 4)) ||
+                !isInBounds(buffer, buffer.getInt(entry + 8), buffer.getInt(entry + 12))) {
+                return null;
+            }
+        }
+        return new CompiledIndex(buffer, indexFile, count, "");
+    }
+    
+    /**
+     * @return true if the index has been compiled from a source file with this size and last modified time
+     */
+    boolean hasSourceStamp(long sourceSize, long sourceLastModified) {
+        return buffer.getLong(8) == sourceSize && buffer.getLong(16) == sourceLastModified;
+    }
+    
+    /**
+     * @return true if the index has been compiled from a source file with this size and checksum
+     */
+    boolean hasSourceChecksum(long sourceSize, long sourceChecksum) {
+        return buffer.getLong(8) == sourceSize && buffer.getLong(24) == sourceChecksum;
+    }
+    
+    long generation() {
+        return buffer.getLong(32);
+    }
+    
+    @Override
+    public BloomFilter filter() {
+        return BloomFilter.read(buffer, buffer.getInt(44));
+    }
+    
+    /**
+     * Compile the flattened items of a source file into an index file. The file is written next to its final
+     * location first and moved in place atomically, so readers never see a partially written index.
+     */
+    static void write(Path indexFile, Path source, Map<String, String> items, long sourceSize, long sourceLastModified, long sourceChecksum, long generation) throws IOException {
+        byte[] sourcePath = source.toString().getBytes(StandardCharsets.UTF_8);
+        byte[][] keys = new byte[items.size()][];
+        byte[][] values = new byte[items.size()][];
+        int i = 0;
+        for (Map.Entry<String, String> item : items.entrySet()) {
+            keys[i] = item.getKey().getBytes(StandardCharsets.UTF_8);
+            values[i] = item.getValue().getBytes(StandardCharsets.UTF_8);
+            i++;
+        }
+        Integer[] order = new Integer[keys.length];
+        Arrays.setAll(order, index -> index);
+        Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(keys[a], keys[b]));
+        
+        Path tempFile = Files.createTempFile(indexFile.getParent(), indexFile.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(sourceSize);
+                out.writeLong(sourceLastModified);
+                out.writeLong(sourceChecksum);
+                out.writeLong(generation);
+                out.writeInt(keys.length);
+                long offset = HEADER_SIZE + (long) keys.length * ENTRY_SIZE + sourcePath.length;
+                long dataSize = 0;
+                for (byte[][] data : new byte[][][]{keys, values}) {
+                    for (byte[] bytes : data) {
+                        dataSize += bytes.length;
+                    }
+                }
+                if (offset + dataSize > Integer.MAX_VALUE) {
+                    throw new IOException("Cannot compile " + indexFile + ", indexes larger than 2 GB are not supported");
+                }
+                out.writeInt((int) (offset + dataSize));
+                out.writeInt(sourcePath.length);
+                for (int index : order) {
+                    out.writeInt((int) offset);
+                    out.writeInt(keys[index].length);
+                    out.writeInt((int) (offset + keys[index].length));
+                    out.writeInt(values[index].length);
+                    offset += keys[index].length + values[index].length;
+                }
+                out.write(sourcePath);
+                for (int index : order) {
+                    out.write(keys[index]);
+                    out.write(values[index]);
+                }
+                BloomFilter.of(items.keySet()).write(out);
+            }
+            Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+    
+    @Override
+    public FlatIndex withPrefix(String prefix) {
+        return new CompiledIndex(buffer, file, count, this.prefix + prefix);
+    }
+    
+    @Override
+    boolean isSorted() {
+        return true;
+    }
+    
+    @Override
+    public int size() {
+        return count;
+    }
+    
+    /**
+     * Binary search for the key on the mapped bytes.
+     */
+    @Override
+    int find(String key) {
+        byte[] wanted = key.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compareKey(middle, wanted);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+    
+    private int compareKey(int entry, byte[] wanted) {
+        int offset = buffer.getInt(HEADER_SIZE + entry * ENTRY_SIZE);
+        int length = buffer.getInt(HEADER_SIZE + entry * ENTRY_SIZE + 4);
+        int common = Math.min(length, wanted.length);
+        for (int i = 0; i < common; i++) {
+            int comparison = Integer.compare(buffer.get(offset + i) & 0xFF, wanted[i] & 0xFF);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return Integer.compare(length, wanted.length);
+    }
+    
+    @Override
+    String key(int entry) {
+        int position = HEADER_SIZE + entry * ENTRY_SIZE;
+        return MappedTomlIndex.decode(buffer, buffer.getInt(position), buffer.getInt(position) + buffer.getInt(position + 4));
+    }
+    
+    @Override
+    String value(int entry) {
+        int position = HEADER_SIZE + entry * ENTRY_SIZE + 8;
+        try {
+            return MappedTomlIndex.decode(buffer, buffer.getInt(position), buffer.getInt(position) + buffer.getInt(position + 4));
+        } catch (InternalError e) {
+            // Thrown when accessing a mapped file which has been truncated
+            throw new IllegalStateException("Could not read " + file + ", it has been truncated", e);
+        }
+    }
+    
+    private static boolean isInBounds(ByteBuffer buffer, int offset, int length) {
+        return offset >= 0 && length >= 0 && (long) offset + length <= buffer.limit();
+    }
+}
@@ -0,0 +1,204 @@
+package io.gdcc.jdbc.conffile.adapters;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+
+/**
+ * Compiles a TOML file into a binary {@link CompiledIndex} once and maps that index from then on, also across
+ * restarts: as long as the checksum of the TOML file matches the one recorded in the index, the file is not parsed.
+ * A changed file is recompiled automatically.
+ * <p>
+ * In shared mode, many JVMs on a node use the same index files: the index is compiled by one JVM only, while
+ * holding a file lock, and all JVMs map the same pages of the page cache. An index compiled from a file with the
+ * same size and last modified time is trusted without even reading the file. A file modified shortly before being
+ * compiled might be modified again without its last modified time changing, so its index is stamped as unknown
+ * and the checksum is compared until the last modified time is old enough to be trusted.
+ * <p>
+ * Whoever can write to the index directory controls the values served, so it is only used when it is owned by the
+ * current user and not writable by anyone else. A missing index directory is created accessible to its owner only.
+ */
+final class CompiledTomlBackend implements TomlParserBackend {
+    
+    private static final Logger logger = Logger.getLogger(CompiledTomlBackend.class.getName());
+    
+    // File locks are held by the whole JVM, threads of the same JVM need to take turns on their own
+    private static final Map<Path, Monitor> compiling = new ConcurrentHashMap<>();
+    
+    // Last modified times are not precise, a file modified within this time might be modified again unnoticed
+    static final long RACY_MILLIS = 2000;
+    static final long UNKNOWN_LAST_MODIFIED = Long.MIN_VALUE;
+    
+    private final Path indexDirectory;
+    private final boolean shared;
+    private volatile boolean secured;
+    
+    CompiledTomlBackend(Path indexDirectory, boolean shared) {
+        this.indexDirectory = indexDirectory;
+        this.shared = shared;
+    }
+    
+    @Override
+    public Map<String, String> flatten(Path file) throws IOException {
+        try {
+            secureIndexDirectory();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Not using index directory " + indexDirectory + ", serving " + file + " from memory", e);
+            return StreamingTomlParser.flatten(file);
+        }
+        Path source = file.toRealPath();
+        Path indexFile = indexFileFor(source);
+        if (!shared) {
+            return compile(source, indexFile);
+        }
+        
+        BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        CompiledIndex index = CompiledIndex.open(indexFile, source);
+        if (index != null && index.hasSourceStamp(attributes.size(), attributes.lastModifiedTime().toMillis())) {
+            return index;
+        }
+        
+        Path lockFile = indexDirectory.resolve(indexFile.getFileName() + ".lock");
+        Monitor monitor = compiling.compute(lockFile, (path, current) -> current != null ? current.retain() : new Monitor());
+        try {
+            synchronized (monitor) {
+                try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                     FileLock lock = channel.lock()) {
+                    // Another JVM might have compiled the file while we were waiting for the lock
+                    index = CompiledIndex.open(indexFile, source);
+                    if (index != null && index.hasSourceStamp(attributes.size(), attributes.lastModifiedTime().toMillis())) {
+                        return index;
+                    }
+                    return compile(source, indexFile);
+                }
+            }
+        } finally {
+            compiling.computeIfPresent(lockFile, (path, current) -> current.release() ? null : current);
+        }
+    }
+    
+    private Map<String, String> compile(Path file, Path indexFile) throws IOException {
+        // Take the stamp before reading: if the file changes while we read it, the stamp is outdated and the
+        // file is compiled again with the next lookup.
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+        if (System.currentTimeMillis() - lastModified < RACY_MILLIS) {
+            lastModified = UNKNOWN_LAST_MODIFIED;
+        }
+        // Read the file once: the checksum and (if need be) the compiled index are based on the very same bytes
+        byte[] source = Files.readAllBytes(file);
+        CRC32C checksum = new CRC32C();
+        checksum.update(source);
+        
+        CompiledIndex index = CompiledIndex.open(indexFile, file);
+        if (index != null && index.hasSourceChecksum(source.length, checksum.getValue()) &&
+            (!shared || index.hasSourceStamp(source.length, lastModified))) {
+            return index;
+        }
+        
+        // When only the last modified time changed, the existing index can be copied with a new stamp
+        Map<String, String> values = index != null && index.hasSourceChecksum(source.length, checksum.getValue()) ?
+            index : StreamingTomlParser.flatten(new String(source, StandardCharsets.UTF_8), file);
+        long generation = index != null ? index.generation() + 1 : 1;
+        try {
+            CompiledIndex.write(indexFile, file, values, source.length, lastModified, checksum.getValue(), generation);
+            index = CompiledIndex.open(indexFile, file);
+            logger.log(Level.FINE, "Compiled {0} into {1}, generation {2}", new Object[] {file, indexFile, generation});
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not compile " + file + " into " + indexFile + ", serving it from memory", e);
+            return values;
+        }
+        // Another JVM might have replaced the index with a newer version in the meantime, we still have our values
+        return index != null && index.hasSourceChecksum(source.length, checksum.getValue()) ? index : values;
+    }
+    
+    /**
+     * @return How many lock files threads of this JVM are waiting for or holding
+     */
+    static int getCompiling() {
+        return compiling.size();
+    }
+    
+    private void secureIndexDirectory() throws IOException {
+        if (secured) {
+            return;
+        }
+        PosixFileAttributeView posix = Files.getFileAttributeView(indexDirectory, PosixFileAttributeView.class, LinkOption.NOFOLLOW_LINKS);
+        if (posix != null && Files.notExists(indexDirectory, LinkOption.NOFOLLOW_LINKS)) {
+            Files.createDirectories(indexDirectory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        } else {
+            Files.createDirectories(indexDirectory);
+        }
+        
+        if (!Files.isDirectory(indexDirectory, LinkOption.NOFOLLOW_LINKS)) {
+            throw new IOException(indexDirectory + " is not a directory");
+        }
+        UserPrincipal user = indexDirectory.getFileSystem().getUserPrincipalLookupService()
+            .lookupPrincipalByName(System.getProperty("user.name"));
+        UserPrincipal owner = Files.getOwner(indexDirectory, LinkOption.NOFOLLOW_LINKS);
+        if (!owner.equals(user)) {
+            throw new IOException(indexDirectory + " is owned by " + owner.getName() + ", not by " + user.getName());
+        }
+        if (posix != null) {
+            Set<PosixFilePermission> permissions = posix.readAttributes().permissions();
+            if (permissions.contains(PosixFilePermission.GROUP_WRITE) || permissions.contains(PosixFilePermission.OTHERS_WRITE)) {
+                throw new IOException(indexDirectory + " is writable by others (" + PosixFilePermissions.toString(permissions) + ")");
+            }
+        }
+        secured = true;
+    }
+    
+    /**
+     * @return The index file for a TOML file, named after the file and a digest of its real path (the index directory
+     * may be shared by many config directories)
+     */
+    Path indexFileFor(Path file) throws IOException {
+        byte[] path = file.toRealPath().toString().getBytes(StandardCharsets.UTF_8);
+        try {
+            StringBuilder name = new StringBuilder(file.getFileName() + "-");
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(path)) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return indexDirectory.resolve(name.append(".idx").toString());
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * Lets threads of this JVM take turns on a lock file, as long as any thread uses it.
+     */
+    private static final class Monitor {
+        private int users = 1;
+        
+        Monitor retain() {
+            users++;
+            return this;
+        }
+        
+        /**
+         * @return true if nobody uses the monitor anymore
+         */
+        boolean release() {
+            return --users == 0;
+        }
+    }
+}
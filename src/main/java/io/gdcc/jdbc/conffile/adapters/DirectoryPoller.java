@@ -0,0 +1,148 @@
+package io.gdcc.jdbc.conffile.adapters;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Detects changes within a config directory by periodically looking at the size and last modified time of the
+ * directory itself (changes when files are created, deleted or renamed) and of all files loaded from it.
+ * This works on file systems not delivering change events, like NFS mounts.
+ * <p>
+ * Polling starts with the minimum interval and backs off up to the maximum interval as long as nothing changes.
+ * All pollers share a single background thread.
+ */
+final class DirectoryPoller extends ChangeDetector {
+    
+    private static final Logger logger = Logger.getLogger(DirectoryPoller.class.getName());
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "conffile-poller");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    private final long minInterval;
+    private final long maxInterval;
+    private final Map<Path, Stamp> trackedFiles = new ConcurrentHashMap<>();
+    
+    private volatile boolean stopped = false;
+    
+    // Only accessed from the scheduler thread
+    private Stamp directoryStamp;
+    private long interval;
+    
+    DirectoryPoller(Path directory, long minInterval, long maxInterval) throws IOException {
+        super(directory);
+        this.minInterval = minInterval;
+        this.maxInterval = Math.max(minInterval, maxInterval);
+        this.directoryStamp = Stamp.of(directory);
+        this.interval = minInterval;
+        scheduler.schedule(this::poll, this.interval, TimeUnit.MILLISECONDS);
+    }
+    
+    @Override
+    boolean supports(AdapterOptions.ChangeDetection changeDetection) {
+        return changeDetection == AdapterOptions.ChangeDetection.POLL;
+    }
+    
+    @Override
+    void track(Path file, BasicFileAttributes attributes) {
+        trackedFiles.put(file, new Stamp(attributes.size(), attributes.lastModifiedTime()));
+    }
+    
+    @Override
+    void shutDown() {
+        stopped = true;
+    }
+    
+    private void poll() {
+        if (stopped) {
+            return;
+        }
+        // Whatever happens, keep polling: a poller which stopped silently would serve stale files forever
+        try {
+            if (hasChanged()) {
+                changed();
+                interval = minInterval;
+            } else {
+                interval = Math.min(interval * 2, maxInterval);
+            }
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Polling directory " + directory + " for changes failed", e);
+            interval = minInterval;
+        } finally {
+            scheduler.schedule(this::poll, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    private boolean hasChanged() {
+        boolean changed = false;
+        try {
+            Stamp currentDirectoryStamp = Stamp.of(directory);
+            if (!currentDirectoryStamp.equals(directoryStamp)) {
+                directoryStamp = currentDirectoryStamp;
+                changed = true;
+            }
+            for (Map.Entry<Path, Stamp> tracked : trackedFiles.entrySet()) {
+                if (!Stamp.of(tracked.getKey()).equals(tracked.getValue())) {
+                    // Reloading the file will track it again with its new stamp
+                    trackedFiles.remove(tracked.getKey(), tracked.getValue());
+                    changed = true;
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not poll directory " + directory + " for changes", e);
+            changed = true;
+        }
+        return changed;
+    }
+    
+    private static final class Stamp {
+        private static final Stamp MISSING = new Stamp(-1, null);
+        
+        private final long size;
+        private final FileTime lastModified;
+        
+        Stamp(long size, FileTime lastModified) {
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+        
+        static Stamp of(Path path) throws IOException {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                return new Stamp(attributes.size(), attributes.lastModifiedTime());
+            } catch (NoSuchFileException e) {
+                return MISSING;
+            }
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Stamp)) {
+                return false;
+            }
+            Stamp other = (Stamp) o;
+            return size == other.size && Objects.equals(lastModified, other.lastModified);
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(size, lastModified);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package io.gdcc.jdbc.conffile.adapters;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Watches a config directory for changes using a {@link WatchService}. Every event within the directory
+ * (creating, modifying or deleting a file, or an overflow) counts as a change. Edits become visible as soon
+ * as the event has been delivered.
+ * <p>
+ * Note: some file systems (e.g. network mounts) do not deliver events for changes made by other hosts.
+ * Use a {@link DirectoryPoller} for these.
+ */
+final class DirectoryWatcher extends ChangeDetector {
+    
+    private static final Logger logger = Logger.getLogger(DirectoryWatcher.class.getName());
+    
+    private final WatchService watchService;
+    
+    DirectoryWatcher(Path directory) throws IOException {
+        super(directory);
+        this.watchService = directory.getFileSystem().newWatchService();
+        directory.register(this.watchService,
+            StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY,
+            StandardWatchEventKinds.ENTRY_DELETE);
+        
+        Thread thread = new Thread(this::processEvents, "conffile-watcher-" + directory);
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    @Override
+    boolean supports(AdapterOptions.ChangeDetection changeDetection) {
+        return changeDetection == AdapterOptions.ChangeDetection.WATCH;
+    }
+    
+    @Override
+    void shutDown() {
+        try {
+            // Makes the watching thread end
+            watchService.close();
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Could not close watch service for " + directory, e);
+        }
+    }
+    
+    private void processEvents() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                // We do not care which file changed - any event makes the snapshots look at their file again.
+                if (!key.pollEvents().isEmpty()) {
+                    changed();
+                }
+                if (!key.reset()) {
+                    logger.log(Level.WARNING, "Directory {0} is no longer accessible, stopped watching it", directory);
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // Intentionally left blank - we are shutting down
+        } finally {
+            // Fall back to checking the files on disk
+            stop();
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                logger.log(Level.FINE, "Could not close watch service for " + directory, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package io.gdcc.jdbc.conffile.adapters;
+
+import java.util.Map;
+
+/**
+ * A read-only, flattened view of a file which can be handed out as is by an {@link Adapter}, instead of being
+ * copied into a hash map first.
+ */
+interface FlatIndex extends Map<String, String> {
+    
+    /**
+     * @param prefix Prepended to every key, e.g. {@code %profile.}
+     * @return A view of the same items with prefixed keys, sharing all data with this index
+     */
+    FlatIndex withPrefix(String prefix);
+    
+    /**
+     * @return A filter for the keys (without prefix) stored along with the index, or null to build one from the keys
+     */
+    default BloomFilter filter() {
+        return null;
+    }
+    
+    /**
+     * @return true if values are read from the source file itself, so they change (or fail to read) along with it
+     */
+    default boolean readsSourceFile() {
+        return false;
+    }
+}
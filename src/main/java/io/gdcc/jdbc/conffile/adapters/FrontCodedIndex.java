@@ -0,0 +1,183 @@
+package io.gdcc.jdbc.conffile.adapters;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Keeps the keys of a snapshot in a front-coded (prefix compressed) sorted dictionary. Flattened keys share long
+ * prefixes ({@code dataverse.feature.x}, {@code products.17.sku}), so instead of a {@link String} per key, the keys
+ * are sorted by their UTF-8 bytes and stored in blocks of {@value #BLOCK_SIZE}: the first key of a block in full,
+ * every other key as the length of the prefix it shares with its predecessor plus the remaining bytes. All lengths
+ * are stored as variable length integers.
+ * <p>
+ * A lookup is a binary search over the first keys of the blocks, followed by decoding a single block. Values are
+ * kept in an array in the order of the keys.
+ */
+final class FrontCodedIndex extends AbstractFlatIndex {
+    
+    static final int BLOCK_SIZE = 16;
+    
+    private final byte[] dictionary;
+    private final int[] blocks;
+    private final String[] values;
+    private final int maxKeyLength;
+    
+    private FrontCodedIndex(byte[] dictionary, int[] blocks, String[] values, int maxKeyLength, String prefix) {
+        super(prefix);
+        this.dictionary = dictionary;
+        this.blocks = blocks;
+        this.values = values;
+        this.maxKeyLength = maxKeyLength;
+    }
+    
+    static FrontCodedIndex of(Map<String, String> items) {
+        byte[][] keys = new byte[items.size()][];
+        String[] unsortedValues = new String[items.size()];
+        int i = 0;
+        for (Map.Entry<String, String> item : items.entrySet()) {
+            keys[i] = item.getKey().getBytes(StandardCharsets.UTF_8);
+            unsortedValues[i] = item.getValue();
+            i++;
+        }
+        Integer[] order = new Integer[keys.length];
+        Arrays.setAll(order, index -> index);
+        Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(keys[a], keys[b]));
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int[] blocks = new int[(keys.length + BLOCK_SIZE - 1) / BLOCK_SIZE];
+        String[] values = new String[keys.length];
+        int maxKeyLength = 0;
+        byte[] previous = null;
+        for (int position = 0; position < order.length; position++) {
+            byte[] key = keys[order[position]];
+            values[position] = unsortedValues[order[position]];
+            maxKeyLength = Math.max(maxKeyLength, key.length);
+            if (position % BLOCK_SIZE == 0) {
+                blocks[position / BLOCK_SIZE] = out.size();
+                writeVarInt(out, key.length);
+                out.write(key, 0, key.length);
+            } else {
+                int shared = Arrays.mismatch(previous, key);
+                shared = shared < 0 ? key.length : shared;
+                writeVarInt(out, shared);
+                writeVarInt(out, key.length - shared);
+                out.write(key, shared, key.length - shared);
+            }
+            previous = key;
+        }
+        return new FrontCodedIndex(out.toByteArray(), blocks, values, maxKeyLength, "");
+    }
+    
+    /**
+     * @return Bytes used for the keys: the dictionary and the block offsets
+     */
+    long keyBytes() {
+        return dictionary.length + 4L * blocks.length;
+    }
+    
+    @Override
+    public FlatIndex withPrefix(String prefix) {
+        return new FrontCodedIndex(dictionary, blocks, values, maxKeyLength, this.prefix + prefix);
+    }
+    
+    @Override
+    boolean isSorted() {
+        return true;
+    }
+    
+    @Override
+    public int size() {
+        return values.length;
+    }
+    
+    @Override
+    int find(String key) {
+        byte[] wanted = key.getBytes(StandardCharsets.UTF_8);
+        if (blocks.length == 0 || wanted.length > maxKeyLength) {
+            return -1;
+        }
+        
+        // Find the last block starting with a key not greater than the wanted one
+        int low = 0;
+        int high = blocks.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (compareHead(middle, wanted) <= 0) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        
+        byte[] current = new byte[maxKeyLength];
+        int[] cursor = {blocks[low]};
+        int length = 0;
+        int end = Math.min(values.length, (low + 1) * BLOCK_SIZE);
+        for (int position = low * BLOCK_SIZE; position < end; position++) {
+            length = readKey(position, cursor, current, length);
+            int comparison = Arrays.compareUnsigned(current, 0, length, wanted, 0, wanted.length);
+            if (comparison == 0) {
+                return position;
+            } else if (comparison > 0) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+    
+    @Override
+    String key(int position) {
+        byte[] current = new byte[maxKeyLength];
+        int[] cursor = {blocks[position / BLOCK_SIZE]};
+        int length = 0;
+        for (int i = position - position % BLOCK_SIZE; i <= position; i++) {
+            length = readKey(i, cursor, current, length);
+        }
+        return new String(current, 0, length, StandardCharsets.UTF_8);
+    }
+    
+    @Override
+    String value(int position) {
+        return values[position];
+    }
+    
+    private int compareHead(int block, byte[] wanted) {
+        int[] cursor = {blocks[block]};
+        int length = readVarInt(cursor);
+        return Arrays.compareUnsigned(dictionary, cursor[0], cursor[0] + length, wanted, 0, wanted.length);
+    }
+    
+    /**
+     * Decode the key at the position into the buffer, which holds the previous key of the block.
+     * @return The length of the key
+     */
+    private int readKey(int position, int[] cursor, byte[] buffer, int previousLength) {
+        int shared = position % BLOCK_SIZE == 0 ? 0 : readVarInt(cursor);
+        int suffix = readVarInt(cursor);
+        System.arraycopy(dictionary, cursor[0], buffer, shared, suffix);
+        cursor[0] += suffix;
+        return shared + suffix;
+    }
+    
+    private int readVarInt(int[] cursor) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = dictionary[cursor[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+    
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
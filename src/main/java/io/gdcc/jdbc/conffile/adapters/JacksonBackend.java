@@ -0,0 +1,79 @@
+package io.gdcc.jdbc.conffile.adapters;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.POJONode;
+import com.fasterxml.jackson.dataformat.toml.TomlMapper;
+import com.fasterxml.jackson.dataformat.toml.TomlReadFeature;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Parses a TOML file into a tree of JSON nodes with jackson-dataformat-toml and flattens the tree afterwards.
+ * Jackson is an optional dependency: it needs to be on the classpath (or shaded into the JAR) to use this backend.
+ */
+final class JacksonBackend implements TomlParserBackend {
+    
+    static final JacksonBackend INSTANCE = new JacksonBackend();
+    static final String MAPPER_CLASS = "com.fasterxml.jackson.dataformat.toml.TomlMapper";
+    
+    // Parse dates and times into java.time objects, so they are formatted the same way as with the other backends
+    private final TomlMapper mapper = TomlMapper.builder().enable(TomlReadFeature.PARSE_JAVA_TIME).build();
+    
+    private JacksonBackend() {
+        // Intentionally left blank - singleton
+    }
+    
+    @Override
+    public Map<String, String> flatten(Path file) throws IOException {
+        Map<String, String> values = new HashMap<>();
+        Iterator<Map.Entry<String, JsonNode>> fields = mapper.readTree(file.toFile()).fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            deepSearch(field.getKey(), field.getValue(), values);
+        }
+        return values;
+    }
+    
+    private static void deepSearch(final String key, final JsonNode value, final Map<String, String> flattenedValues) {
+        if (value.isArray()) {
+            if (value.size() > 0) {
+                // If this is a complex object, lets unwrap it into a flattened form
+                if (value.get(0).isObject()) {
+                    for (int i = 0; i < value.size(); i++) {
+                        deepSearch(key + "." + i, value.get(i), flattenedValues);
+                    }
+                } else {
+                    flattenedValues.putIfAbsent(key, join(value, ","));
+                }
+            }
+        } else if (value.isObject()) {
+            Iterator<Map.Entry<String, JsonNode>> fields = value.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                deepSearch(key + "." + field.getKey(), field.getValue(), flattenedValues);
+            }
+        } else {
+            flattenedValues.putIfAbsent(key, asString(value));
+        }
+    }
+    
+    private static String join(JsonNode array, String separator) {
+        StringBuilder joined = new StringBuilder();
+        for (JsonNode element : array) {
+            if (joined.length() > 0) {
+                joined.append(separator);
+            }
+            // Nested arrays are formatted like a Java list, as night-config does
+            joined.append(element.isArray() ? "[" + join(element, ", ") + "]" : asString(element));
+        }
+        return joined.toString();
+    }
+    
+    private static String asString(JsonNode value) {
+        return value.isPojo() ? String.valueOf(((POJONode) value).getPojo()) : value.asText();
+    }
+}
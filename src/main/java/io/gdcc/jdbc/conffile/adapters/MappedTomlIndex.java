@@ -0,0 +1,122 @@
+package io.gdcc.jdbc.conffile.adapters;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Flattened view of a memory-mapped TOML file, built by {@link StreamingTomlParser#index(Path)}. Only the keys are
+ * held on the heap, along with the location of their value within the file. A value is decoded from the mapped
+ * bytes each time it is read, so values never read never cost any heap.
+ * <p>
+ * Note: the file stays mapped until the index is garbage collected. Replace config files by moving a new file
+ * in place - truncating a mapped file in place makes reading its values fail. For the same reason, the index is not
+ * kept as the last known good version when reloading a changed file fails.
+ */
+final class MappedTomlIndex extends AbstractFlatIndex {
+    
+    private final ByteBuffer buffer;
+    private final Path file;
+    private final Map<String, Integer> slots;
+    private final int[] starts;
+    private final int[] ends;
+    private final String[] keys;
+    
+    private MappedTomlIndex(ByteBuffer buffer, Path file, Map<String, Integer> slots, int[] starts, int[] ends, String[] keys, String prefix) {
+        super(prefix);
+        this.buffer = buffer;
+        this.file = file;
+        this.slots = slots;
+        this.starts = starts;
+        this.ends = ends;
+        this.keys = keys;
+    }
+    
+    @Override
+    public FlatIndex withPrefix(String prefix) {
+        return new MappedTomlIndex(buffer, file, slots, starts, ends, keys, this.prefix + prefix);
+    }
+    
+    @Override
+    public boolean readsSourceFile() {
+        return true;
+    }
+    
+    @Override
+    public int size() {
+        return keys.length;
+    }
+    
+    @Override
+    int find(String key) {
+        Integer slot = slots.get(key);
+        return slot != null ? slot : -1;
+    }
+    
+    @Override
+    String key(int slot) {
+        return keys[slot];
+    }
+    
+    @Override
+    String value(int slot) {
+        try {
+            return StreamingTomlParser.decodeValue(decode(buffer, starts[slot], ends[slot]), file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InternalError e) {
+            // Thrown when accessing a mapped file which has been truncated
+            throw new IllegalStateException("Could not read " + file + ", it has been truncated", e);
+        }
+    }
+    
+    static String decode(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        buffer.duplicate().position(start).get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    static final class Builder {
+        private final MappedByteBuffer buffer;
+        private final Path file;
+        private final Map<String, Integer> slots = new HashMap<>();
+        private int[] starts = new int[64];
+        private int[] ends = new int[64];
+        private String[] keys = new String[64];
+        
+        Builder(MappedByteBuffer buffer, Path file) {
+            this.buffer = buffer;
+            this.file = file;
+        }
+        
+        /**
+         * Record the location of a value. As when flattening, the first definition of a key wins.
+         */
+        void put(String key, int start, int end) {
+            int slot = slots.size();
+            if (slots.putIfAbsent(key, slot) != null) {
+                return;
+            }
+            if (slot == keys.length) {
+                starts = Arrays.copyOf(starts, slot * 2);
+                ends = Arrays.copyOf(ends, slot * 2);
+                keys = Arrays.copyOf(keys, slot * 2);
+            }
+            starts[slot] = start;
+            ends[slot] = end;
+            keys[slot] = key;
+        }
+        
+        MappedTomlIndex build() {
+            int size = slots.size();
+            return new MappedTomlIndex(buffer, file, slots,
+                Arrays.copyOf(starts, size), Arrays.copyOf(ends, size), Arrays.copyOf(keys, size), "");
+        }
+    }
+}
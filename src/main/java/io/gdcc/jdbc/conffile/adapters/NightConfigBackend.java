@@ -0,0 +1,67 @@
+package io.gdcc.jdbc.conffile.adapters;
+
+import com.electronwill.nightconfig.core.Config;
+import com.electronwill.nightconfig.core.concurrent.StampedConfig;
+import com.electronwill.nightconfig.core.file.FileConfig;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Parses a TOML file into a tree of config objects with night-config and flattens the tree afterwards.
+ */
+final class NightConfigBackend implements TomlParserBackend {
+    
+    static final NightConfigBackend INSTANCE = new NightConfigBackend();
+    
+    private NightConfigBackend() {
+        // Intentionally left blank - singleton
+    }
+    
+    @Override
+    public Map<String, String> flatten(Path file) {
+        // The parsed tree is only needed to build the flattened index, no need to keep it around.
+        try (FileConfig fileConfig = FileConfig.of(file)) {
+            fileConfig.load();
+            
+            Map<String, String> values = new HashMap<>();
+            for (Config.Entry entry : fileConfig.entrySet()) {
+                deepSearch(entry.getKey(), entry.getValue(), values);
+            }
+            return values;
+        }
+    }
+    
+    private static void deepSearch(final String key, final Object value, final Map<String,String> flattenedValues) {
+        Objects.requireNonNull(value, "value must not be null at key " + key);
+        if (value instanceof List) {
+            List list = (List) value;
+            if (!list.isEmpty()) {
+                Object innerValue = list.get(0);
+                // If this is a complex object, lets unwrap it into a flattened form
+                if (innerValue instanceof StampedConfig) {
+                    for (int i = 0; i < list.size(); i++) {
+                        deepSearch(key + "." + i, list.get(i), flattenedValues);
+                    }
+                } else {
+                    // If this is just a bunch of whatever, just add them as a string representation to the map
+                    // (MPC will convert this for us)
+                    flattenedValues.putIfAbsent(key, ((List<Object>) list).stream().map(String::valueOf).collect(Collectors.joining(",")));
+                }
+            }
+        } else if (value instanceof StampedConfig) {
+            for (Config.Entry subValue : ((StampedConfig) value).entrySet()) {
+                String subKey = key + "." + subValue.getKey();
+                deepSearch(subKey, subValue.getValue(), flattenedValues);
+            }
+        } else {
+            // If this is just a bunch of whatever, just add them as a string representation to the map
+            // (MPC will convert this for us)
+            flattenedValues.putIfAbsent(key, String.valueOf(value));
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package io.gdcc.jdbc.conffile.adapters;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A minimal perfect hash over the keys of a snapshot, built once when the snapshot is loaded ("hash and displace",
+ * as in CHD). Every key maps to its own slot of the parallel key and value arrays, so a lookup always takes a
+ * single probe: one hash of the key's characters to find its bucket, mixing that hash with the bucket's
+ * displacement to find the slot, and one comparison to tell apart absent keys. Compared to a {@link java.util.HashMap}, there are no entry
+ * objects and no empty slots, only one int per key on top of the keys and values themselves. Keys and values
+ * are interleaved in one array, so a key and its value usually share a cache line.
+ */
+final class PerfectHashIndex extends AbstractFlatIndex {
+    
+    private static final int MAX_DISPLACEMENT = 1 << 20;
+    // Every attempt hashes the keys with another seed, two keys colliding with several seeds are next to impossible
+    private static final int MAX_ATTEMPTS = 8;
+    
+    private final long seed;
+    private final int[] displacements;
+    private final String[] entries;
+    
+    private PerfectHashIndex(long seed, int[] displacements, String[] entries, String prefix) {
+        super(prefix);
+        this.seed = seed;
+        this.displacements = displacements;
+        this.entries = entries;
+    }
+    
+    /**
+     * @throws IllegalStateException If no perfect hash could be found for these keys, which should never happen
+     */
+    static PerfectHashIndex of(Map<String, String> items) {
+        String[] keys = items.keySet().toArray(new String[0]);
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            PerfectHashIndex index = of(items, keys, mix(0x9e3779b97f4a7c15L * (attempt + 1)));
+            if (index != null) {
+                return index;
+            }
+        }
+        throw new IllegalStateException("Cannot find a perfect hash for " + keys.length + " keys");
+    }
+    
+    /**
+     * @return The index, or null if some keys cannot be told apart with this seed
+     */
+    private static PerfectHashIndex of(Map<String, String> items, String[] keys, long seed) {
+        int size = keys.length;
+        String[] entries = new String[size * 2];
+        int[] displacements = new int[size];
+        if (size == 0) {
+            return new PerfectHashIndex(seed, displacements, entries, "");
+        }
+        
+        // Hash every key once: the upper half of the hash selects the bucket, the lower half the slot
+        int[] slotHashes = new int[size];
+        int[] bucketOf = new int[size];
+        int[] bucketSizes = new int[size];
+        for (int i = 0; i < size; i++) {
+            long hash = hash(keys[i], seed);
+            slotHashes[i] = (int) hash;
+            bucketOf[i] = range((int) (hash >>> 32), size);
+            bucketSizes[bucketOf[i]]++;
+        }
+        
+        // Lay out the keys bucket by bucket, and order the buckets by size, largest first (both by counting)
+        int[] bucketStarts = new int[size + 1];
+        for (int bucket = 0; bucket < size; bucket++) {
+            bucketStarts[bucket + 1] = bucketStarts[bucket] + bucketSizes[bucket];
+        }
+        int[] members = new int[size];
+        int[] filled = Arrays.copyOf(bucketStarts, size);
+        for (int i = 0; i < size; i++) {
+            members[filled[bucketOf[i]]++] = i;
+        }
+        int maxBucketSize = Arrays.stream(bucketSizes).max().orElse(0);
+        int[] sizeStarts = new int[maxBucketSize + 2];
+        for (int bucket = 0; bucket < size; bucket++) {
+            sizeStarts[maxBucketSize - bucketSizes[bucket] + 1]++;
+        }
+        Arrays.parallelPrefix(sizeStarts, Integer::sum);
+        int[] order = new int[size];
+        for (int bucket = 0; bucket < size; bucket++) {
+            order[sizeStarts[maxBucketSize - bucketSizes[bucket]]++] = bucket;
+        }
+        
+        // Place the largest buckets first: find a displacement sending all their keys to free slots
+        boolean[] taken = new boolean[size];
+        int[] slots = new int[maxBucketSize];
+        int next = 0;
+        for (; next < size && bucketSizes[order[next]] > 1; next++) {
+            int bucket = order[next];
+            int start = bucketStarts[bucket];
+            int end = bucketStarts[bucket + 1];
+            for (int i = start; i < end; i++) {
+                for (int j = start; j < i; j++) {
+                    if (slotHashes[members[i]] == slotHashes[members[j]]) {
+                        return null;
+                    }
+                }
+            }
+            for (int displacement = 1; ; displacement++) {
+                if (displacement > MAX_DISPLACEMENT) {
+                    return null;
+                }
+                if (tryPlace(members, start, end, slotHashes, displacement, taken, slots)) {
+                    for (int i = start; i < end; i++) {
+                        int slot = slots[i - start];
+                        String key = keys[members[i]];
+                        taken[slot] = true;
+                        entries[slot * 2] = key;
+                        entries[slot * 2 + 1] = items.get(key);
+                    }
+                    displacements[bucket] = displacement;
+                    break;
+                }
+            }
+        }
+        
+        // Buckets with a single key go straight to the remaining free slots, the displacement points to the slot
+        int free = 0;
+        for (; next < size && bucketSizes[order[next]] == 1; next++) {
+            while (taken[free]) {
+                free++;
+            }
+            String key = keys[members[bucketStarts[order[next]]]];
+            taken[free] = true;
+            entries[free * 2] = key;
+            entries[free * 2 + 1] = items.get(key);
+            displacements[order[next]] = -free - 1;
+        }
+        return new PerfectHashIndex(seed, displacements, entries, "");
+    }
+    
+    private static boolean tryPlace(int[] members, int start, int end, int[] slotHashes, int displacement, boolean[] taken, int[] slots) {
+        int size = taken.length;
+        for (int i = start; i < end; i++) {
+            int slot = slot(slotHashes[members[i]], displacement, size);
+            if (taken[slot]) {
+                return false;
+            }
+            for (int j = start; j < i; j++) {
+                if (slots[j - start] == slot) {
+                    return false;
+                }
+            }
+            slots[i - start] = slot;
+        }
+        return true;
+    }
+    
+    @Override
+    public FlatIndex withPrefix(String prefix) {
+        return new PerfectHashIndex(seed, displacements, entries, this.prefix + prefix);
+    }
+    
+    @Override
+    public int size() {
+        return displacements.length;
+    }
+    
+    @Override
+    int find(String key) {
+        int size = displacements.length;
+        if (size == 0) {
+            return -1;
+        }
+        long hash = hash(key, seed);
+        int displacement = displacements[range((int) (hash >>> 32), size)];
+        int slot = displacement < 0 ? -displacement - 1 : slot((int) hash, displacement, size);
+        return entries[slot * 2].equals(key) ? slot : -1;
+    }
+    
+    @Override
+    String key(int slot) {
+        return entries[slot * 2];
+    }
+    
+    @Override
+    String value(int slot) {
+        return entries[slot * 2 + 1];
+    }
+    
+    /**
+     * A seeded 64 bit hash of the key's characters (FNV-1a, finalized like MurmurHash3). Unlike {@link String#hashCode()},
+     * keys with the same hash under one seed are told apart under another one.
+     */
+    private static long hash(String key, long seed) {
+        long hash = seed ^ 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+    
+    private static int slot(int hash, int displacement, int size) {
+        return range((int) mix(hash ^ displacement * 0x9e3779b9L), size);
+    }
+    
+    /**
+     * The 64 bit finalizer of MurmurHash3, spreading all bits of the input over the output
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+    
+    /**
+     * Map a hash to 0..size-1 with a multiplication instead of a (slower) division
+     */
+    private static int range(int hash, int size) {
+        return (int) (((hash & 0xFFFFFFFFL) * size) >>> 32);
+    }
+}
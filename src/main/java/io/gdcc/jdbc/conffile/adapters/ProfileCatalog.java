@@ -0,0 +1,144 @@
+package io.gdcc.jdbc.conffile.adapters;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Process-wide catalog of the files within config directories, to find the profiles of a table or the file of
+ * a table and profile without listing the directory or checking the file for every query. Looking for a file which
+ * does not exist is a lookup in the catalog, too. A directory is listed again only after it changed: either its
+ * {@link ChangeDetector} reported a change, or (without a detector) its last modified time changed.
+ * <p>
+ * Files belong to a table if they are named exactly {@code <table>.<suffix>} (no profile) or
+ * {@code <table>-<profile>.<suffix>}, so e.g. {@code dataversefoo.toml} does not belong to the table {@code dataverse}.
+ * Only regular, readable files are listed.
+ */
+public final class ProfileCatalog {
+    
+    // A listing taken right after a change might miss files created within the same tick of the directory's
+    // last modified time, so such listings are not reused based on the last modified time
+    private static final long RACY_MILLIS = 2000;
+    
+    private static final Map<Path, Listing> listings = new ConcurrentHashMap<>();
+    private static final LongAdder scans = new LongAdder();
+    
+    private ProfileCatalog() {
+        // Intentionally left blank - static catalog only
+    }
+    
+    /**
+     * @param directory The config directory
+     * @param table The table name, which is the base name of the files
+     * @param adapterType The type of adapter, determining the file suffixes
+     * @return The profiles of the table, with {@code null} for the file without a profile (always listed first)
+     */
+    public static List<String> profilesFor(Path directory, String table, String adapterType) throws IOException {
+        NavigableSet<String> names = listing(directory).names;
+        List<String> profiles = new ArrayList<>();
+        for (String suffix : Adapter.Factory.suffixesForType(adapterType)) {
+            String extension = "." + suffix;
+            if (names.contains(table + extension) && !profiles.contains(null)) {
+                profiles.add(0, null);
+            }
+            // All names starting with "<table>-" sort right before "<table>."
+            for (String name : names.subSet(table + "-", true, table + ".", false)) {
+                String profile = name.endsWith(extension) ?
+                    name.substring(table.length() + 1, name.length() - extension.length()) : "";
+                if (!profile.isEmpty() && !profiles.contains(profile)) {
+                    profiles.add(profile);
+                }
+            }
+        }
+        return profiles;
+    }
+    
+    /**
+     * @param directory The config directory
+     * @param name The base name of the file, i.e. the table name with the profile (if any)
+     * @param suffixes The suffixes a file may have, in order of preference
+     * @return The file, or null if there is no such file
+     */
+    public static Path resolve(Path directory, String name, List<String> suffixes) throws IOException {
+        NavigableSet<String> names = listing(directory).names;
+        for (String suffix : suffixes) {
+            if (names.contains(name + "." + suffix)) {
+                return directory.resolve(name + "." + suffix);
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * @return How many times a directory has been listed
+     */
+    public static long getScans() {
+        return scans.sum();
+    }
+    
+    private static Listing listing(Path directory) throws IOException {
+        Path key = directory.toAbsolutePath().normalize();
+        Listing cached = listings.get(key);
+        ChangeDetector detector = ChangeDetector.forDirectory(directory);
+        if (cached != null && cached.isUnchangedSince(detector)) {
+            return cached;
+        }
+        
+        // As for snapshots: take the generation and the last modified time before listing the directory
+        long generation = detector != null ? detector.generation() : 0;
+        FileTime lastModified = Files.getLastModifiedTime(directory);
+        if (cached != null && cached.isCurrent(lastModified)) {
+            if (detector != null) {
+                listings.put(key, cached.confirmedBy(detector, generation));
+            }
+            return cached;
+        }
+        
+        boolean racy = System.currentTimeMillis() - lastModified.toMillis() < RACY_MILLIS;
+        scans.increment();
+        NavigableSet<String> names = new TreeSet<>();
+        try (Stream<Path> paths = Files.list(directory)) {
+            paths.filter(path -> Files.isRegularFile(path) && Files.isReadable(path))
+                .forEach(path -> names.add(path.getFileName().toString()));
+        }
+        Listing listing = new Listing(Collections.unmodifiableNavigableSet(names), racy ? null : lastModified, detector, generation);
+        listings.put(key, listing);
+        return listing;
+    }
+    
+    private static final class Listing {
+        private final NavigableSet<String> names;
+        private final FileTime lastModified;
+        private final ChangeDetector detector;
+        private final long generation;
+        
+        Listing(NavigableSet<String> names, FileTime lastModified, ChangeDetector detector, long generation) {
+            this.names = names;
+            this.lastModified = lastModified;
+            this.detector = detector;
+            this.generation = generation;
+        }
+        
+        boolean isUnchangedSince(ChangeDetector currentDetector) {
+            return currentDetector != null && currentDetector == detector && currentDetector.generation() == generation;
+        }
+        
+        boolean isCurrent(FileTime currentLastModified) {
+            return lastModified != null && lastModified.equals(currentLastModified);
+        }
+        
+        Listing confirmedBy(ChangeDetector currentDetector, long currentGeneration) {
+            return new Listing(names, lastModified, currentDetector, currentGeneration);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package io.gdcc.jdbc.conffile.adapters;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Process-wide cache of loaded adapters, keyed by adapter type, file path, profile, parser and index.
+ * A cached adapter is handed out again as long as size and last modified time of its file did not change,
+ * so repeated lookups against an unchanged file never touch the parser.
+ * <p>
+ * When changes within the directory of a file are detected in the background by a {@link ChangeDetector}, the file
+ * is not even checked on disk: the cached adapter is served from memory until the detector reports a change.
+ * <p>
+ * Loading is single-flight: when many threads miss the same file at once, exactly one of them parses it, while
+ * the others wait for and share its result.
+ * <p>
+ * Snapshots are immutable and replaced copy-on-write: a reload builds a complete new snapshot off to the side and
+ * publishes it with a single atomic swap, readers never take a lock. If a reload fails (e.g. because the file is
+ * being written right now), the last known good snapshot is served until the file changes again. Adapters reading
+ * from a memory-mapped file are not served as last known good: their values change along with the file.
+ */
+public final class SnapshotCache {
+    
+    @FunctionalInterface
+    interface Resolver {
+        Path resolve() throws IOException;
+    }
+    
+    @FunctionalInterface
+    interface Loader {
+        Adapter load(Path file) throws IOException;
+    }
+    
+    private static final Logger logger = Logger.getLogger(SnapshotCache.class.getName());
+    
+    private static final Map<Key, Snapshot> snapshots = new ConcurrentHashMap<>();
+    private static final Map<Key, CompletableFuture<Adapter>> loading = new ConcurrentHashMap<>();
+    
+    private static final LongAdder loads = new LongAdder();
+    private static final LongAdder suppressedLoads = new LongAdder();
+    private static final LongAdder failedLoads = new LongAdder();
+    
+    private SnapshotCache() {
+        // Intentionally left blank - static cache only
+    }
+    
+    static Adapter get(Key key, Path directory, Resolver resolver, Loader loader) throws IOException {
+        Snapshot cached = snapshots.get(key);
+        ChangeDetector detector = ChangeDetector.forDirectory(directory);
+        if (cached != null && cached.isUnchangedSince(detector)) {
+            return cached.adapter;
+        }
+        
+        // Take the detector's generation before looking at the file: any change happening after this point
+        // will bump the generation and make us look at the file again next time.
+        long generation = detector != null ? detector.generation() : 0;
+        
+        // Stat before loading: if the file changes while we parse it, the next lookup sees a newer stamp and reloads.
+        Path file = resolver.resolve();
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        
+        if (cached != null && cached.isCurrent(file, attributes)) {
+            if (detector != null) {
+                detector.track(file, attributes);
+                snapshots.put(key, cached.confirmedBy(detector, generation));
+            }
+            return cached.adapter;
+        }
+        
+        // Someone else is loading this file already? Wait for their result instead of parsing it again.
+        CompletableFuture<Adapter> load = new CompletableFuture<>();
+        CompletableFuture<Adapter> inFlight = loading.putIfAbsent(key, load);
+        if (inFlight != null) {
+            suppressedLoads.increment();
+            return await(inFlight);
+        }
+        
+        try {
+            // Another thread might have finished loading in the meantime
+            Snapshot loaded = snapshots.get(key);
+            if (loaded != null && loaded != cached && loaded.isCurrent(file, attributes)) {
+                suppressedLoads.increment();
+                load.complete(loaded.adapter);
+                return loaded.adapter;
+            }
+            
+            Adapter adapter = loadOrFallBack(file, loader, cached);
+            if (detector != null) {
+                detector.track(file, attributes);
+            }
+            snapshots.put(key, new Snapshot(adapter, file, attributes.size(), attributes.lastModifiedTime(), detector, generation));
+            load.complete(adapter);
+            return adapter;
+        } catch (IOException | RuntimeException | Error e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, load);
+        }
+    }
+    
+    private static Adapter loadOrFallBack(Path file, Loader loader, Snapshot lastKnownGood) throws IOException {
+        loads.increment();
+        try {
+            return loader.load(file);
+        } catch (IOException | RuntimeException e) {
+            // A memory-mapped file has changed underneath its adapter, there is no good version to go back to
+            if (lastKnownGood == null || !lastKnownGood.adapter.isDetachedFromFile()) {
+                throw e;
+            }
+            // Remember the failed version along with the last known good adapter, so we don't retry until it changes.
+            failedLoads.increment();
+            logger.log(Level.WARNING, "Could not reload " + file + ", continuing with last known good version", e);
+            return lastKnownGood.adapter;
+        }
+    }
+    
+    /**
+     * @return How many times a file has been parsed
+     */
+    public static long getLoads() {
+        return loads.sum();
+    }
+    
+    /**
+     * @return How many times a thread did not parse a file, but waited for another thread already parsing it
+     */
+    public static long getSuppressedLoads() {
+        return suppressedLoads.sum();
+    }
+    
+    /**
+     * @return How many times reloading a changed file failed, leaving the last known good version in place
+     */
+    public static long getFailedLoads() {
+        return failedLoads.sum();
+    }
+    
+    private static Adapter await(CompletableFuture<Adapter> inFlight) throws IOException {
+        try {
+            return inFlight.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+    
+    static final class Key {
+        private final String type;
+        private final String pathAndBasename;
+        private final String profile;
+        private final AdapterOptions.Parser parser;
+        private final AdapterOptions.Index index;
+        
+        Key(String type, String pathAndBasename, String profile, AdapterOptions.Parser parser, AdapterOptions.Index index) {
+            this.type = type;
+            this.pathAndBasename = pathAndBasename;
+            this.profile = profile;
+            this.parser = parser;
+            this.index = index;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return type.equals(other.type) && pathAndBasename.equals(other.pathAndBasename) &&
+                Objects.equals(profile, other.profile) && parser == other.parser && index == other.index;
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, pathAndBasename, profile, parser, index);
+        }
+    }
+    
+    private static final class Snapshot {
+        private final Adapter adapter;
+        private final Path file;
+        private final long size;
+        private final FileTime lastModified;
+        private final ChangeDetector detector;
+        private final long generation;
+        
+        Snapshot(Adapter adapter, Path file, long size, FileTime lastModified, ChangeDetector detector, long generation) {
+            this.adapter = adapter;
+            this.file = file;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.detector = detector;
+            this.generation = generation;
+        }
+        
+        boolean isUnchangedSince(ChangeDetector currentDetector) {
+            return currentDetector != null && currentDetector == detector && currentDetector.generation() == generation;
+        }
+        
+        boolean isCurrent(Path currentFile, BasicFileAttributes attributes) {
+            return file.equals(currentFile) && size == attributes.size() && lastModified.equals(attributes.lastModifiedTime());
+        }
+        
+        Snapshot confirmedBy(ChangeDetector currentDetector, long currentGeneration) {
+            return new Snapshot(adapter, file, size, lastModified, currentDetector, currentGeneration);
+        }
+    }
+}
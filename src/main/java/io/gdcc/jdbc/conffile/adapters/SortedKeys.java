@@ -0,0 +1,90 @@
+package io.gdcc.jdbc.conffile.adapters;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * The keys of an index without an order of its own (like a hash map), sorted once, to find all keys starting
+ * with a prefix by binary search instead of looking at every key, and to page through the items in key order.
+ */
+final class SortedKeys {
+    
+    private final String[] keys;
+    
+    SortedKeys(Collection<String> keys) {
+        this.keys = keys.toArray(String[]::new);
+        Arrays.sort(this.keys, AbstractFlatIndex::compareKeys);
+    }
+    
+    /**
+     * @param items The items to read the values from
+     * @param prefix Prepended to the keys, e.g. {@code %profile.}
+     * @return The items in the order of their keys, reading an item only when asked for it
+     */
+    List<Map.Entry<String, String>> entries(Map<String, String> items, String prefix) {
+        return new Entries(items, prefix);
+    }
+    
+    /**
+     * @param sorted Items in the order of their keys
+     * @return The first item with a key not less than the given one, or the size of the list if there is none
+     */
+    static int lowerBound(List<Map.Entry<String, String>> sorted, String key) {
+        int low = 0;
+        int high = sorted.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (AbstractFlatIndex.compareKeys(sorted.get(middle).getKey(), key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * @param sorted Items in the order of their keys
+     * @return The range of items with keys starting with the prefix, found by binary search
+     */
+    static List<Map.Entry<String, String>> startingWith(List<Map.Entry<String, String>> sorted, String keyPrefix) {
+        int from = lowerBound(sorted, keyPrefix);
+        // All keys from here on starting with the prefix come first
+        int low = from;
+        int high = sorted.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted.get(middle).getKey().startsWith(keyPrefix)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return sorted.subList(from, low);
+    }
+    
+    private final class Entries extends AbstractList<Map.Entry<String, String>> implements RandomAccess {
+        private final Map<String, String> items;
+        private final String prefix;
+        
+        Entries(Map<String, String> items, String prefix) {
+            this.items = items;
+            this.prefix = prefix;
+        }
+        
+        @Override
+        public Map.Entry<String, String> get(int index) {
+            return new AbstractMap.SimpleImmutableEntry<>(prefix + keys[index], items.get(keys[index]));
+        }
+        
+        @Override
+        public int size() {
+            return keys.length;
+        }
+    }
+}
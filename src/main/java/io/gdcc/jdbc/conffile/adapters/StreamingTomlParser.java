@@ -0,0 +1,750 @@
+package io.gdcc.jdbc.conffile.adapters;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A read-only TOML parser emitting flattened {@code dotted.key -> string} pairs directly while reading the file,
+ * without building a tree of config objects first. The flattening is the same as done for night-config:
+ * <ul>
+ *     <li>Tables and inline tables become part of the dotted key</li>
+ *     <li>Arrays of tables (and arrays of inline tables) are indexed like {@code products.0.sku}</li>
+ *     <li>Arrays of values are joined with a comma, empty arrays are skipped</li>
+ *     <li>Values are formatted like their Java representation in night-config, e.g. dates and numbers</li>
+ *     <li>The first definition of a key wins</li>
+ * </ul>
+ * The parser is lenient: it does not check for all TOML semantic errors (like redefining a table),
+ * but will fail on syntax errors.
+ * <p>
+ * Instead of flattening a file right away, the parser can also just {@link #index(Path) index} a memory-mapped file,
+ * deferring the decoding of values until they are read.
+ */
+final class StreamingTomlParser {
+    
+    private static final int EOF = -1;
+    
+    private final CharSequence input;
+    private final Path file;
+    private final Map<String, String> values = new HashMap<>();
+    // Only set when indexing a memory-mapped file
+    private final MappedTomlIndex.Builder ranges;
+    // Arrays of tables by resolved path, along with the number of tables defined so far
+    private final Map<String, Integer> tableArrays = new HashMap<>();
+    private int pos = 0;
+    
+    private StreamingTomlParser(CharSequence input, Path file, MappedTomlIndex.Builder ranges) {
+        this.input = input;
+        this.file = file;
+        this.ranges = ranges;
+    }
+    
+    static Map<String, String> flatten(Path file) throws IOException {
+        return flatten(Files.readString(file), file);
+    }
+    
+    static Map<String, String> flatten(String input, Path file) throws IOException {
+        StreamingTomlParser parser = new StreamingTomlParser(input, file, null);
+        parser.parseDocument();
+        return parser.values;
+    }
+    
+    /**
+     * Memory-map the file and only record where each value is located, without decoding any value.
+     * @param file The file to index, must be smaller than 2 GB
+     * @return The index, decoding a value when it is read
+     */
+    static MappedTomlIndex index(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Cannot map " + file + ", files larger than 2 GB are not supported");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        
+        // TOML syntax is plain ASCII, so we can scan the raw bytes: bytes of multibyte UTF-8 characters never
+        // look like syntax. Only keys and values need to be decoded properly.
+        MappedTomlIndex.Builder ranges = new MappedTomlIndex.Builder(buffer, file);
+        new StreamingTomlParser(new ByteSequence(buffer, 0, buffer.limit()), file, ranges).parseDocument();
+        return ranges.build();
+    }
+    
+    /**
+     * Decode a single value recorded by {@link #index(Path)}.
+     * @param value The TOML source of the value
+     * @param file The file containing the value, for error messages only
+     * @return The value formatted the same way as when flattening the file
+     */
+    static String decodeValue(String value, Path file) throws IOException {
+        StreamingTomlParser parser = new StreamingTomlParser(value, file, null);
+        if (parser.peek() == '[') {
+            parser.pos++;
+            return parser.parseValueArrayContent(",");
+        }
+        return parser.parseScalar();
+    }
+    
+    private void parseDocument() throws IOException {
+        // Skip a byte order mark
+        if (peek() == '\uFEFF') {
+            pos++;
+        } else if (peek() == 0xEF && peekAt(1) == 0xBB && peekAt(2) == 0xBF) {
+            pos += 3;
+        }
+        
+        String prefix = "";
+        while (true) {
+            skipWhitespaceCommentsAndNewlines();
+            int c = peek();
+            if (c == EOF) {
+                return;
+            }
+            if (c == '[') {
+                prefix = parseTableHeader();
+            } else {
+                parseKeyValue(prefix);
+            }
+            expectEndOfLine();
+        }
+    }
+    
+    private String parseTableHeader() throws IOException {
+        pos++;
+        boolean isArray = peek() == '[';
+        if (isArray) {
+            pos++;
+        }
+        
+        skipWhitespace();
+        StringBuilder path = new StringBuilder();
+        while (true) {
+            if (path.length() > 0) {
+                path.append('.');
+            }
+            path.append(parseSimpleKey());
+            skipWhitespace();
+            if (peek() != '.') {
+                break;
+            }
+            pos++;
+            skipWhitespace();
+            // Any intermediate segment referring to an array of tables means its last element
+            Integer count = tableArrays.get(path.toString());
+            if (count != null) {
+                path.append('.').append(count - 1);
+            }
+        }
+        
+        expect(']');
+        if (isArray) {
+            expect(']');
+            String arrayPath = path.toString();
+            int index = tableArrays.merge(arrayPath, 1, Integer::sum) - 1;
+            path.append('.').append(index);
+        }
+        return path.toString();
+    }
+    
+    private void parseKeyValue(String prefix) throws IOException {
+        String key = parseKey(prefix);
+        skipWhitespace();
+        expect('=');
+        skipWhitespace();
+        parseValue(key);
+    }
+    
+    private String parseKey(String prefix) throws IOException {
+        StringBuilder key = new StringBuilder(prefix);
+        while (true) {
+            if (key.length() > 0) {
+                key.append('.');
+            }
+            key.append(parseSimpleKey());
+            skipWhitespace();
+            if (peek() != '.') {
+                return key.toString();
+            }
+            pos++;
+            skipWhitespace();
+        }
+    }
+    
+    private String parseSimpleKey() throws IOException {
+        int c = peek();
+        if (ranges != null && (c == '"' || c == '\'')) {
+            // Quoted keys may contain any character, decode them from the raw bytes
+            int start = pos;
+            skipValue();
+            return decodeValue(text(start, pos), file);
+        }
+        if (c == '"') {
+            return parseBasicString();
+        }
+        if (c == '\'') {
+            return parseLiteralString();
+        }
+        int start = pos;
+        while (isBareKeyChar(peek())) {
+            pos++;
+        }
+        if (start == pos) {
+            throw error("Expected a key");
+        }
+        return text(start, pos);
+    }
+    
+    private void parseValue(String key) throws IOException {
+        int c = peek();
+        if (c == '[') {
+            parseArray(key);
+        } else if (c == '{') {
+            parseInlineTable(key);
+        } else if (ranges != null) {
+            int start = pos;
+            skipValue();
+            ranges.put(key, start, pos);
+        } else {
+            put(key, parseScalar());
+        }
+    }
+    
+    private void parseArray(String key) throws IOException {
+        int start = pos;
+        pos++;
+        skipWhitespaceCommentsAndNewlines();
+        if (peek() == '{') {
+            // Array of inline tables: flatten each table with its index
+            int index = 0;
+            while (peek() != ']') {
+                parseInlineTable(key + "." + index++);
+                if (!skipArraySeparator()) {
+                    break;
+                }
+            }
+            expect(']');
+        } else if (ranges != null) {
+            boolean empty = peek() == ']';
+            pos = start;
+            skipValue();
+            if (!empty) {
+                ranges.put(key, start, pos);
+            }
+        } else {
+            String joined = parseValueArrayContent(",");
+            if (!joined.isEmpty()) {
+                put(key, joined);
+            }
+        }
+    }
+    
+    /**
+     * Parse the elements of an array of values (the opening bracket has already been consumed),
+     * including the closing bracket. Nested arrays are formatted like a Java list.
+     */
+    private String parseValueArrayContent(String separator) throws IOException {
+        StringBuilder joined = new StringBuilder();
+        skipWhitespaceCommentsAndNewlines();
+        boolean first = true;
+        while (peek() != ']') {
+            if (!first) {
+                joined.append(separator);
+            }
+            first = false;
+            
+            int c = peek();
+            if (c == '[') {
+                pos++;
+                joined.append('[').append(parseValueArrayContent(", ")).append(']');
+            } else if (c == '{') {
+                throw error("Inline tables within an array of values are not supported");
+            } else {
+                joined.append(parseScalar());
+            }
+            if (!skipArraySeparator()) {
+                break;
+            }
+        }
+        expect(']');
+        return joined.toString();
+    }
+    
+    /**
+     * Skip whitespace, comments and newlines around an array separator.
+     * @return true if there was a separator, false if the array should end now
+     */
+    private boolean skipArraySeparator() {
+        skipWhitespaceCommentsAndNewlines();
+        if (peek() == ',') {
+            pos++;
+            skipWhitespaceCommentsAndNewlines();
+            return true;
+        }
+        return false;
+    }
+    
+    private void parseInlineTable(String key) throws IOException {
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+            return;
+        }
+        while (true) {
+            parseKeyValue(key);
+            skipWhitespace();
+            if (peek() == ',') {
+                pos++;
+                skipWhitespace();
+            } else {
+                expect('}');
+                return;
+            }
+        }
+    }
+    
+    private String parseScalar() throws IOException {
+        int c = peek();
+        if (c == '"') {
+            return startsWith("\"\"\"") ? parseMultilineBasicString() : parseBasicString();
+        }
+        if (c == '\'') {
+            return startsWith("'''") ? parseMultilineLiteralString() : parseLiteralString();
+        }
+        
+        int start = pos;
+        skipBareValue();
+        return convertBareValue(text(start, pos));
+    }
+    
+    private void skipBareValue() throws IOException {
+        int start = pos;
+        while (isBareValueChar(peek())) {
+            pos++;
+        }
+        // A date and a time may be separated by a space
+        if (pos - start == 10 && peek() == ' ' && isDigit(peekAt(pos + 1)) && isDigit(peekAt(pos + 2)) && peekAt(pos + 3) == ':') {
+            pos++;
+            while (isBareValueChar(peek())) {
+                pos++;
+            }
+        }
+        if (start == pos) {
+            throw error("Expected a value");
+        }
+    }
+    
+    /**
+     * Move behind the value at the current position without decoding it. Fails on syntax errors, but does not
+     * check escape sequences within strings: these fail when the value is decoded.
+     */
+    private void skipValue() throws IOException {
+        int c = peek();
+        if (c == '[') {
+            pos++;
+            skipWhitespaceCommentsAndNewlines();
+            while (peek() != ']') {
+                if (peek() == '{') {
+                    throw error("Inline tables within an array of values are not supported");
+                }
+                skipValue();
+                if (!skipArraySeparator()) {
+                    break;
+                }
+            }
+            expect(']');
+        } else if (startsWith("\"\"\"") || startsWith("'''")) {
+            String delimiter = startsWith("\"\"\"") ? "\"\"\"" : "'''";
+            pos += 3;
+            while (!startsWith(delimiter)) {
+                int next = next();
+                if (next == EOF) {
+                    throw error("Unterminated multi-line string");
+                } else if (next == '\\' && c == '"') {
+                    pos++;
+                }
+            }
+            pos += 3;
+            // Up to two additional quotes directly before the delimiter belong to the content
+            for (int i = 0; i < 2 && peek() == c; i++) {
+                pos++;
+            }
+        } else if (c == '"' || c == '\'') {
+            pos++;
+            while (true) {
+                int next = next();
+                if (next == c) {
+                    return;
+                } else if (next == EOF || next == '\n') {
+                    throw error("Unterminated string");
+                } else if (next == '\\' && c == '"') {
+                    pos++;
+                }
+            }
+        } else {
+            // Bare values are short, convert them right away to fail early on invalid ones
+            int start = pos;
+            skipBareValue();
+            convertBareValue(text(start, pos));
+        }
+    }
+    
+    private String convertBareValue(String raw) throws IOException {
+        switch (raw) {
+            case "true":
+            case "false":
+                return raw;
+            case "inf":
+            case "+inf":
+                return String.valueOf(Double.POSITIVE_INFINITY);
+            case "-inf":
+                return String.valueOf(Double.NEGATIVE_INFINITY);
+            case "nan":
+            case "+nan":
+            case "-nan":
+                return String.valueOf(Double.NaN);
+            default:
+                break;
+        }
+        
+        try {
+            if (raw.length() > 2 && raw.charAt(0) == '0' && Character.isLetter(raw.charAt(1))) {
+                String digits = raw.substring(2).replace("_", "");
+                switch (raw.charAt(1)) {
+                    case 'x':
+                        return String.valueOf(Long.parseLong(digits, 16));
+                    case 'o':
+                        return String.valueOf(Long.parseLong(digits, 8));
+                    case 'b':
+                        return String.valueOf(Long.parseLong(digits, 2));
+                    default:
+                        throw error("Invalid value: " + raw);
+                }
+            }
+            if (raw.indexOf(':') > 0 || (raw.length() >= 10 && raw.charAt(4) == '-' && raw.charAt(7) == '-')) {
+                return convertDateTime(raw);
+            }
+            String number = raw.replace("_", "");
+            if (number.indexOf('.') >= 0 || number.indexOf('e') >= 0 || number.indexOf('E') >= 0) {
+                return String.valueOf(Double.parseDouble(number));
+            }
+            return String.valueOf(Long.parseLong(number.startsWith("+") ? number.substring(1) : number));
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw error("Invalid value: " + raw);
+        }
+    }
+    
+    private static String convertDateTime(String raw) {
+        String value = raw.replace(' ', 'T').replace('t', 'T').replace('z', 'Z');
+        boolean hasTime = value.indexOf(':') > 0;
+        boolean hasDate = value.length() >= 10 && value.charAt(4) == '-';
+        if (hasDate && hasTime) {
+            int offsetStart = Math.max(value.indexOf('Z'), Math.max(value.indexOf('+', 10), value.indexOf('-', 10)));
+            return offsetStart > 0 ?
+                OffsetDateTime.parse(value).toString() :
+                LocalDateTime.parse(value).toString();
+        }
+        return hasDate ? LocalDate.parse(value).toString() : LocalTime.parse(value).toString();
+    }
+    
+    private String parseBasicString() throws IOException {
+        expect('"');
+        StringBuilder result = new StringBuilder();
+        while (true) {
+            int c = next();
+            if (c == '"') {
+                return result.toString();
+            } else if (c == '\\') {
+                parseEscape(result);
+            } else if (c == EOF || c == '\n') {
+                throw error("Unterminated string");
+            } else {
+                result.append((char) c);
+            }
+        }
+    }
+    
+    private String parseMultilineBasicString() throws IOException {
+        pos += 3;
+        skipNewline();
+        StringBuilder result = new StringBuilder();
+        while (true) {
+            if (startsWith("\"\"\"")) {
+                pos += 3;
+                // Up to two additional quotes directly before the delimiter belong to the content
+                for (int i = 0; i < 2 && peek() == '"'; i++) {
+                    result.append('"');
+                    pos++;
+                }
+                return result.toString();
+            }
+            int c = next();
+            if (c == EOF) {
+                throw error("Unterminated multi-line string");
+            } else if (c == '\\') {
+                if (isLineEndingBackslash()) {
+                    skipWhitespaceAndNewlines();
+                } else {
+                    parseEscape(result);
+                }
+            } else {
+                result.append((char) c);
+            }
+        }
+    }
+    
+    private String parseLiteralString() throws IOException {
+        expect('\'');
+        int start = pos;
+        while (true) {
+            int c = next();
+            if (c == '\'') {
+                return text(start, pos - 1);
+            } else if (c == EOF || c == '\n') {
+                throw error("Unterminated string");
+            }
+        }
+    }
+    
+    private String parseMultilineLiteralString() throws IOException {
+        pos += 3;
+        skipNewline();
+        int start = pos;
+        int end = pos;
+        while (!startsWith("'''")) {
+            if (next() == EOF) {
+                throw error("Unterminated multi-line string");
+            }
+            end = pos;
+        }
+        // Up to two additional quotes directly before the delimiter belong to the content
+        for (int i = 0; i < 2 && peekAt(end + 3) == '\''; i++) {
+            end++;
+        }
+        pos = end + 3;
+        return text(start, end);
+    }
+    
+    private void parseEscape(StringBuilder result) throws IOException {
+        int c = next();
+        switch (c) {
+            case 'b':
+                result.append('\b');
+                break;
+            case 't':
+                result.append('\t');
+                break;
+            case 'n':
+                result.append('\n');
+                break;
+            case 'f':
+                result.append('\f');
+                break;
+            case 'r':
+                result.append('\r');
+                break;
+            case 'e':
+                result.append('\u001B');
+                break;
+            case '"':
+                result.append('"');
+                break;
+            case '\\':
+                result.append('\\');
+                break;
+            case 'u':
+                result.appendCodePoint(parseHex(4));
+                break;
+            case 'U':
+                result.appendCodePoint(parseHex(8));
+                break;
+            default:
+                throw error("Invalid escape sequence \\" + (c == EOF ? "" : String.valueOf((char) c)));
+        }
+    }
+    
+    private int parseHex(int digits) throws IOException {
+        if (pos + digits > input.length()) {
+            throw error("Invalid unicode escape sequence");
+        }
+        try {
+            int codePoint = Integer.parseInt(text(pos, pos + digits), 16);
+            pos += digits;
+            return codePoint;
+        } catch (NumberFormatException e) {
+            throw error("Invalid unicode escape sequence");
+        }
+    }
+    
+    private boolean isLineEndingBackslash() {
+        int i = pos;
+        while (peekAt(i) == ' ' || peekAt(i) == '\t') {
+            i++;
+        }
+        return peekAt(i) == '\n' || (peekAt(i) == '\r' && peekAt(i + 1) == '\n');
+    }
+    
+    private void put(String key, String value) {
+        values.putIfAbsent(key, value);
+    }
+    
+    private void expectEndOfLine() throws IOException {
+        skipWhitespace();
+        int c = peek();
+        if (c == '#') {
+            skipComment();
+            c = peek();
+        }
+        if (c != EOF && c != '\n' && c != '\r') {
+            throw error("Expected a new line");
+        }
+    }
+    
+    private void expect(char expected) throws IOException {
+        if (peek() != expected) {
+            throw error("Expected '" + expected + "'");
+        }
+        pos++;
+    }
+    
+    private void skipWhitespace() {
+        while (peek() == ' ' || peek() == '\t') {
+            pos++;
+        }
+    }
+    
+    private void skipWhitespaceAndNewlines() {
+        while (peek() == ' ' || peek() == '\t' || peek() == '\n' || peek() == '\r') {
+            pos++;
+        }
+    }
+    
+    private void skipWhitespaceCommentsAndNewlines() {
+        while (true) {
+            skipWhitespaceAndNewlines();
+            if (peek() != '#') {
+                return;
+            }
+            skipComment();
+        }
+    }
+    
+    private void skipComment() {
+        while (peek() != EOF && peek() != '\n') {
+            pos++;
+        }
+    }
+    
+    private void skipNewline() {
+        if (peek() == '\n') {
+            pos++;
+        } else if (peek() == '\r' && peekAt(pos + 1) == '\n') {
+            pos += 2;
+        }
+    }
+    
+    private boolean startsWith(String token) {
+        if (pos + token.length() > input.length()) {
+            return false;
+        }
+        for (int i = 0; i < token.length(); i++) {
+            if (input.charAt(pos + i) != token.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private String text(int start, int end) {
+        return input instanceof ByteSequence ? ((ByteSequence) input).decode(start, end) : input.subSequence(start, end).toString();
+    }
+    
+    private int peek() {
+        return peekAt(pos);
+    }
+    
+    private int peekAt(int index) {
+        return index < input.length() ? input.charAt(index) : EOF;
+    }
+    
+    private int next() {
+        int c = peek();
+        if (c != EOF) {
+            pos++;
+        }
+        return c;
+    }
+    
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+    
+    private static boolean isBareKeyChar(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || isDigit(c) || c == '_' || c == '-';
+    }
+    
+    private static boolean isBareValueChar(int c) {
+        return isBareKeyChar(c) || c == '.' || c == '+' || c == ':';
+    }
+    
+    /**
+     * The raw bytes of a mapped file, one character per byte. Only meant for finding the (ASCII) TOML syntax,
+     * use {@link #decode(int, int)} to get the actual text.
+     */
+    private static final class ByteSequence implements CharSequence {
+        private final MappedByteBuffer buffer;
+        private final int offset;
+        private final int length;
+        
+        ByteSequence(MappedByteBuffer buffer, int offset, int length) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.length = length;
+        }
+        
+        @Override
+        public int length() {
+            return length;
+        }
+        
+        @Override
+        public char charAt(int index) {
+            return (char) (buffer.get(offset + index) & 0xFF);
+        }
+        
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new ByteSequence(buffer, offset + start, end - start);
+        }
+        
+        String decode(int start, int end) {
+            return MappedTomlIndex.decode(buffer, offset + start, offset + end);
+        }
+        
+        @Override
+        public String toString() {
+            return decode(0, length);
+        }
+    }
+    
+    private IOException error(String message) {
+        int line = 1;
+        for (int i = 0; i < Math.min(pos, input.length()); i++) {
+            if (input.charAt(i) == '\n') {
+                line++;
+            }
+        }
+        return new IOException("Invalid TOML in " + file + " at line " + line + ": " + message);
+    }
+}
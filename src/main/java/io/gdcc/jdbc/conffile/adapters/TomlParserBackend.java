@@ -0,0 +1,37 @@
+package io.gdcc.jdbc.conffile.adapters;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Parses a TOML file into its flattened {@code dotted.key -> string} view, which is served by the {@link TomlAdapter}.
+ * All backends flatten the same way: tables become part of the key, arrays of tables are indexed
+ * (like {@code products.0.sku}), arrays of values are joined with a comma and the first definition of a key wins.
+ */
+interface TomlParserBackend {
+    
+    Map<String, String> flatten(Path file) throws IOException;
+    
+    static TomlParserBackend of(AdapterOptions options) {
+        if (options.getParser() == AdapterOptions.Parser.COMPILED) {
+            return new CompiledTomlBackend(options.getIndexDirectory(), options.isSharedIndex());
+        }
+        return of(options.getParser());
+    }
+    
+    static TomlParserBackend of(AdapterOptions.Parser parser) {
+        switch (parser) {
+            case STREAMING:
+                return StreamingTomlParser::flatten;
+            case MAPPED:
+                return StreamingTomlParser::index;
+            case COMPILED:
+                return new CompiledTomlBackend(AdapterOptions.defaultIndexDirectory(), false);
+            case JACKSON:
+                return JacksonBackend.INSTANCE;
+            default:
+                return NightConfigBackend.INSTANCE;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package io.gdcc.jdbc.conffile;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.ConnectionEvent;
+import javax.sql.ConnectionEventListener;
+import javax.sql.PooledConnection;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+class ConfFileDataSourceTest {
+    
+    Path directory;
+    
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("datasource");
+        Files.copy(Path.of("src/test/resources/configsource", "dataverse.toml"), directory.resolve("dataverse.toml"));
+    }
+    
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+    
+    static String lookup(Connection connection, String key) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement("SELECT value FROM dataverse WHERE key = ?");
+        statement.setString(1, key);
+        ResultSet resultSet = statement.executeQuery();
+        return resultSet.next() ? resultSet.getString(1) : null;
+    }
+    
+    @Test
+    void connectionsShareTheEngine() throws SQLException {
+        ConfFileDataSource dataSource = new ConfFileDataSource();
+        dataSource.setUrl("jdbc:conffile:toml://" + directory + "?parser=streaming");
+        
+        try (Connection first = dataSource.getConnection(); Connection second = dataSource.getConnection("user", "password")) {
+            Assertions.assertNotSame(first, second);
+            Assertions.assertEquals("gray", lookup(first, "products.2.color"));
+            Assertions.assertEquals("gray", lookup(second, "products.2.color"));
+            // Both are views of the same engine
+            Assertions.assertSame(((ConfFileConnection) first).getEngine(), ((ConfFileConnection) second).getEngine());
+        }
+    }
+    
+    @Test
+    void closedConnectionCannotPrepare() throws SQLException {
+        ConfFileDataSource dataSource = new ConfFileDataSource();
+        dataSource.setUrl("jdbc:conffile:toml://" + directory + "?parser=streaming");
+        
+        Connection connection = dataSource.getConnection();
+        connection.close();
+        Assertions.assertTrue(connection.isClosed());
+        Assertions.assertFalse(connection.isValid(0));
+        Assertions.assertThrows(SQLException.class, () -> connection.prepareStatement("SELECT value FROM dataverse WHERE key = ?"));
+        // Closing a connection does not close the data source
+        try (Connection other = dataSource.getConnection()) {
+            Assertions.assertEquals("gray", lookup(other, "products.2.color"));
+        }
+    }
+    
+    @Test
+    void invalidUrl() {
+        ConfFileDataSource dataSource = new ConfFileDataSource();
+        Assertions.assertThrows(SQLException.class, dataSource::getConnection);
+        dataSource.setUrl("jdbc:conffile:toml://" + directory.resolve("nothing"));
+        Assertions.assertThrows(SQLException.class, dataSource::getConnection);
+    }
+    
+    @Test
+    void pooledConnectionTellsWhenClosed() throws SQLException {
+        ConfFileConnectionPoolDataSource dataSource = new ConfFileConnectionPoolDataSource();
+        dataSource.setUrl("jdbc:conffile:toml://" + directory + "?parser=streaming");
+        
+        PooledConnection pooled = dataSource.getPooledConnection();
+        AtomicInteger closed = new AtomicInteger();
+        pooled.addConnectionEventListener(new ConnectionEventListener() {
+            @Override
+            public void connectionClosed(ConnectionEvent event) {
+                Assertions.assertSame(pooled, event.getSource());
+                closed.incrementAndGet();
+            }
+            
+            @Override
+            public void connectionErrorOccurred(ConnectionEvent event) {
+                Assertions.fail("Unexpected error", event.getSQLException());
+            }
+        });
+        
+        for (int i = 1; i <= 2; i++) {
+            Connection connection = pooled.getConnection();
+            Assertions.assertEquals("gray", lookup(connection, "products.2.color"));
+            connection.close();
+            connection.close();
+            Assertions.assertEquals(i, closed.get());
+        }
+        
+        pooled.close();
+        Assertions.assertThrows(SQLException.class, pooled::getConnection);
+    }
+}
@@ -1,9 +1,19 @@
 package io.gdcc.jdbc.conffile;
 
+import io.gdcc.jdbc.conffile.adapters.SnapshotCache;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.stream.Stream;
 
 class ConfFileDriverTest {
     
@@ -15,4 +25,109 @@ class ConfFileDriverTest {
         Assertions.assertTrue(testDriver.acceptsURL("jdbc:conffile:toml:///etc/dataverse/test.toml"));
     }
     
+    @Test
+    void shareEngineOfDirectoryUntilLastConnectionIsClosed() throws IOException, SQLException {
+        Path parent = Files.createTempDirectory("driver");
+        try {
+            Path directory = Files.createDirectory(parent.resolve("config"));
+            Path link = Files.createSymbolicLink(parent.resolve("link"), directory);
+            int engines = ConfFileDriver.getEngines();
+            
+            Connection first = testDriver.connect("jdbc:conffile:toml://" + directory + "?changeDetection=watch", null);
+            Connection second = testDriver.connect("jdbc:conffile:toml://" + link + "/", null);
+            Properties properties = new Properties();
+            properties.setProperty("changeDetection", "watch");
+            Connection third = testDriver.connect("jdbc:conffile:toml://" + link, properties);
+            
+            // The symbolic link leads to the same directory, but other options need their own engine
+            Assertions.assertEquals(engines + 2, ConfFileDriver.getEngines());
+            ConfFileEngine engine = ((ConfFileConnection) first).getEngine();
+            Assertions.assertSame(engine, ((ConfFileConnection) third).getEngine());
+            Assertions.assertNotSame(engine, ((ConfFileConnection) second).getEngine());
+            
+            second.close();
+            Assertions.assertEquals(engines + 1, ConfFileDriver.getEngines());
+            first.close();
+            first.close();
+            Assertions.assertEquals(engines + 1, ConfFileDriver.getEngines());
+            third.close();
+            Assertions.assertEquals(engines, ConfFileDriver.getEngines());
+            
+            // Starts over with a new engine
+            try (Connection fourth = testDriver.connect("jdbc:conffile:toml://" + directory + "?changeDetection=watch", null)) {
+                Assertions.assertEquals(engines + 1, ConfFileDriver.getEngines());
+                Assertions.assertNotSame(engine, ((ConfFileConnection) fourth).getEngine());
+                
+                // Connecting again with the same URL finds the engine without opening it again
+                long opens = ConfFileEngine.getOpens();
+                try (Connection fifth = testDriver.connect("jdbc:conffile:toml://" + directory + "?changeDetection=watch", null)) {
+                    Assertions.assertSame(((ConfFileConnection) fourth).getEngine(), ((ConfFileConnection) fifth).getEngine());
+                    Assertions.assertEquals(opens, ConfFileEngine.getOpens());
+                }
+            }
+        } finally {
+            try (Stream<Path> paths = Files.walk(parent)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+    }
+    
+    @Test
+    void keepSnapshotsWhenLastConnectionIsClosed() throws IOException, SQLException {
+        Path directory = Files.createTempDirectory("driver");
+        try {
+            Files.writeString(directory.resolve("dataverse.toml"), "title = \"Test\"\n");
+            long loads = -1;
+            for (int i = 0; i < 5; i++) {
+                try (Connection connection = testDriver.connect("jdbc:conffile:toml://" + directory + "?parser=streaming&changeDetection=watch", null)) {
+                    PreparedStatement statement = connection.prepareStatement("SELECT value FROM dataverse WHERE key = ?");
+                    statement.setString(1, "title");
+                    ResultSet resultSet = statement.executeQuery();
+                    Assertions.assertTrue(resultSet.next());
+                    Assertions.assertEquals("Test", resultSet.getString(1));
+                }
+                if (i == 0) {
+                    loads = SnapshotCache.getLoads();
+                }
+            }
+            Assertions.assertEquals(loads, SnapshotCache.getLoads());
+        } finally {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+    }
+    
+    @Test
+    void serveLastKnownGoodVersionUnlessMapped() throws IOException, SQLException {
+        Path directory = Files.createTempDirectory("driver");
+        try {
+            Path file = directory.resolve("dataverse.toml");
+            for (String parser : new String[]{"streaming", "mapped"}) {
+                Files.writeString(file, "title = \"Test\"\n");
+                try (Connection connection = testDriver.connect("jdbc:conffile:toml://" + directory + "?parser=" + parser, null)) {
+                    PreparedStatement statement = connection.prepareStatement("SELECT value FROM dataverse WHERE key = ?");
+                    statement.setString(1, "title");
+                    ResultSet resultSet = statement.executeQuery();
+                    Assertions.assertTrue(resultSet.next());
+                    Assertions.assertEquals("Test", resultSet.getString(1));
+                    
+                    // Rewritten in place: the mapped file already shows the broken version
+                    Files.writeString(file, "title = \"Broken\n");
+                    if (parser.equals("mapped")) {
+                        Assertions.assertThrows(SQLException.class, statement::executeQuery);
+                    } else {
+                        resultSet = statement.executeQuery();
+                        Assertions.assertTrue(resultSet.next());
+                        Assertions.assertEquals("Test", resultSet.getString(1));
+                    }
+                }
+            }
+        } finally {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+    }
+    
 }
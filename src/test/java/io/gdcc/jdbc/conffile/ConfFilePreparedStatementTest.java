@@ -0,0 +1,376 @@
+package io.gdcc.jdbc.conffile;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+class ConfFilePreparedStatementTest {
+    
+    Path directory;
+    Path indexDirectory;
+    
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("statement");
+        indexDirectory = Files.createTempDirectory("statement-index");
+        for (String name : new String[]{"dataverse.toml", "dataverse-ct.toml"}) {
+            Files.copy(Path.of("src/test/resources/configsource", name), directory.resolve(name));
+        }
+    }
+    
+    @AfterEach
+    void tearDown() throws IOException {
+        for (Path path : new Path[]{directory, indexDirectory}) {
+            try (Stream<Path> paths = Files.walk(path)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+    }
+    
+    Connection connect(String options) throws SQLException {
+        return new ConfFileDriver().connect("jdbc:conffile:toml://" + directory + "?indexDirectory=" + indexDirectory + "&" + options, null);
+    }
+    
+    static List<String> values(ResultSet resultSet) throws SQLException {
+        List<String> values = new ArrayList<>();
+        while (resultSet.next()) {
+            values.add(resultSet.getString(1));
+        }
+        return values;
+    }
+    
+    static List<String> rows(ResultSet resultSet) throws SQLException {
+        List<String> rows = new ArrayList<>();
+        while (resultSet.next()) {
+            rows.add(resultSet.getString("key") + "=" + resultSet.getString("value"));
+        }
+        return rows;
+    }
+    
+    @Test
+    void selectSingleValue() throws SQLException {
+        try (Connection connection = connect("parser=streaming")) {
+            PreparedStatement statement = connection.prepareStatement("SELECT value FROM dataverse WHERE key = ?");
+            statement.setString(1, "products.2.color");
+            ResultSet resultSet = statement.executeQuery();
+            
+            Assertions.assertTrue(resultSet.next());
+            Assertions.assertEquals("gray", resultSet.getString("value"));
+            Assertions.assertFalse(resultSet.next());
+        }
+    }
+    
+    @Test
+    void selectManyValues() throws SQLException {
+        try (Connection connection = connect("parser=streaming")) {
+            PreparedStatement statement = connection.prepareStatement("SELECT value FROM dataverse WHERE key IN (?, ?,?, ?, ?)");
+            statement.setString(1, "products.2.color");
+            statement.setString(2, "nothing");
+            statement.setString(3, "%ct.withprofile");
+            statement.setString(4, "title");
+            statement.setString(5, "title");
+            
+            Assertions.assertEquals(List.of("products.2.color=gray", "%ct.withprofile=testvalue", "title=Test"),
+                rows(statement.executeQuery()));
+            Assertions.assertThrows(SQLException.class, () -> statement.setString(6, "title"));
+            
+            statement.clearParameters();
+            statement.setString(1, "title");
+            Assertions.assertThrows(SQLException.class, statement::executeQuery);
+        }
+    }
+    
+    @Test
+    void selectKeysStartingWithPrefix() throws SQLException {
+        for (String options : new String[]{"parser=streaming", "parser=streaming&index=perfect",
+                "parser=streaming&index=frontcoded", "parser=mapped", "parser=compiled"}) {
+            try (Connection connection = connect(options)) {
+                PreparedStatement statement = connection.prepareStatement("SELECT key, value FROM dataverse WHERE key LIKE ?");
+                
+                statement.setString(1, "hello.%");
+                Assertions.assertEquals(List.of("hello.array=1,2,3,4", "hello.attribute=arbitrary", "hello.subtable.foobar=foobbq"),
+                    rows(statement.executeQuery()), options);
+                
+                statement.setString(1, "products.2.%");
+                Assertions.assertEquals(List.of("products.2.color=gray", "products.2.name=Nail", "products.2.sku=284758393"),
+                    rows(statement.executeQuery()), options);
+                
+                statement.setString(1, "nothing.%");
+                Assertions.assertEquals(List.of(), rows(statement.executeQuery()), options);
+                
+                statement.setString(1, "%");
+                Assertions.assertEquals(11, rows(statement.executeQuery()).size(), options);
+            }
+        }
+    }
+    
+    @Test
+    void selectAllColumnsByIndexAndLabel() throws SQLException {
+        for (String options : new String[]{"parser=streaming", "parser=mapped"}) {
+            try (Connection connection = connect(options)) {
+                PreparedStatement statement = connection.prepareStatement("SELECT key, value FROM dataverse");
+                ResultSet resultSet = statement.executeQuery();
+                
+                Assertions.assertThrows(SQLException.class, () -> resultSet.getString(1));
+                int rows = 0;
+                while (resultSet.next()) {
+                    Assertions.assertEquals(1, resultSet.findColumn("key"));
+                    Assertions.assertEquals(2, resultSet.findColumn("VALUE"));
+                    Assertions.assertEquals(resultSet.getString(1), resultSet.getString("key"));
+                    Assertions.assertEquals(resultSet.getString(2), resultSet.getString("Value"));
+                    Assertions.assertThrows(SQLException.class, () -> resultSet.getString(0));
+                    Assertions.assertThrows(SQLException.class, () -> resultSet.getString(3));
+                    Assertions.assertThrows(SQLException.class, () -> resultSet.getString("nothing"));
+                    rows++;
+                }
+                Assertions.assertEquals(12, rows, options);
+                Assertions.assertTrue(resultSet.isAfterLast());
+                Assertions.assertFalse(resultSet.next());
+                
+                statement = connection.prepareStatement("SELECT value FROM dataverse WHERE key = ?");
+                statement.setString(1, "products.2.color");
+                ResultSet single = statement.executeQuery();
+                Assertions.assertTrue(single.next());
+                Assertions.assertEquals("gray", single.getString(1));
+                Assertions.assertThrows(SQLException.class, () -> single.getString(2));
+            }
+        }
+    }
+    
+    @Test
+    void streamAllRowsHonoringFetchSizeAndMaxRows() throws SQLException {
+        try (Connection connection = connect("parser=streaming")) {
+            PreparedStatement statement = connection.prepareStatement("SELECT key, value FROM dataverse");
+            List<String> all = rows(statement.executeQuery());
+            Assertions.assertEquals(12, all.size());
+            
+            statement.setFetchSize(5);
+            ResultSet resultSet = statement.executeQuery();
+            Assertions.assertEquals(ResultSet.TYPE_FORWARD_ONLY, resultSet.getType());
+            Assertions.assertEquals(5, resultSet.getFetchSize());
+            List<String> fetched = new ArrayList<>();
+            Assertions.assertTrue(resultSet.isBeforeFirst());
+            while (resultSet.next()) {
+                Assertions.assertEquals(fetched.size() + 1, resultSet.getRow());
+                Assertions.assertEquals(fetched.size() == 11, resultSet.isLast());
+                fetched.add(resultSet.getString("key") + "=" + resultSet.getString("value"));
+            }
+            Assertions.assertEquals(all, fetched);
+            Assertions.assertTrue(resultSet.isAfterLast());
+            Assertions.assertThrows(SQLException.class, resultSet::previous);
+            
+            statement.setMaxRows(7);
+            Assertions.assertEquals(all.subList(0, 7), rows(statement.executeQuery()));
+            PreparedStatement sorted = connection.prepareStatement("SELECT key, value FROM dataverse ORDER BY key LIMIT 5");
+            sorted.setMaxRows(2);
+            Assertions.assertEquals(List.of("%ct.withprofile=testvalue", "hello.array=1,2,3,4"), rows(sorted.executeQuery()));
+            statement.setMaxRows(2);
+            
+            // Settings are kept when clearing the parameters
+            statement.clearParameters();
+            Assertions.assertEquals(2, statement.getMaxRows());
+            Assertions.assertEquals(2, rows(statement.executeQuery()).size());
+            Assertions.assertThrows(SQLException.class, () -> statement.setFetchSize(-1));
+        }
+        
+        // Quote: false if the result set contains no rows
+        try (Connection connection = connect("parser=streaming&missingFile=empty")) {
+            ResultSet empty = connection.prepareStatement("SELECT key, value FROM nosuchtable").executeQuery();
+            Assertions.assertFalse(empty.isBeforeFirst());
+            Assertions.assertFalse(empty.next());
+            Assertions.assertFalse(empty.isAfterLast());
+        }
+    }
+    
+    @Test
+    void selectKeysStartingWithPrefixOfProfile() throws SQLException {
+        try (Connection connection = connect("parser=streaming")) {
+            PreparedStatement statement = connection.prepareStatement("select key, value from dataverse where key like ?");
+            statement.setString(1, "%ct.with%");
+            
+            Assertions.assertEquals(List.of("%ct.withprofile=testvalue"), rows(statement.executeQuery()));
+        }
+    }
+    
+    @Test
+    void pageThroughKeysInOrder() throws SQLException {
+        for (String options : new String[]{"parser=streaming", "parser=streaming&index=frontcoded", "parser=compiled"}) {
+            try (Connection connection = connect(options)) {
+                PreparedStatement statement = connection.prepareStatement("SELECT key, value FROM dataverse ORDER BY key LIMIT 3 OFFSET 2");
+                Assertions.assertEquals(List.of("hello.attribute=arbitrary", "hello.subtable.foobar=foobbq", "inlinetable.test=test"),
+                    rows(statement.executeQuery()), options);
+                
+                statement = connection.prepareStatement("SELECT key, value FROM dataverse ORDER BY key LIMIT 2");
+                Assertions.assertEquals(List.of("%ct.withprofile=testvalue", "hello.array=1,2,3,4"),
+                    rows(statement.executeQuery()), options);
+                
+                statement = connection.prepareStatement("SELECT key, value FROM dataverse ORDER BY key DESC LIMIT 2 OFFSET 1");
+                Assertions.assertEquals(List.of("products.2.sku=284758393", "products.2.name=Nail"),
+                    rows(statement.executeQuery()), options);
+                
+                statement = connection.prepareStatement("select key, value from dataverse where key like ? order by key limit 1 offset 1");
+                statement.setString(1, "products.%");
+                Assertions.assertEquals(List.of("products.0.sku=738594937"), rows(statement.executeQuery()), options);
+                
+                statement = connection.prepareStatement("SELECT key, value FROM dataverse OFFSET 20");
+                Assertions.assertEquals(List.of(), rows(statement.executeQuery()), options);
+            }
+        }
+    }
+    
+    @Test
+    void countKeys() throws SQLException {
+        try (Connection connection = connect("parser=streaming")) {
+            ResultSet resultSet = connection.prepareStatement("SELECT COUNT(*) FROM dataverse").executeQuery();
+            Assertions.assertTrue(resultSet.next());
+            Assertions.assertEquals(12, resultSet.getLong(1));
+            Assertions.assertEquals(12, resultSet.getInt("COUNT(*)"));
+            Assertions.assertFalse(resultSet.next());
+            
+            PreparedStatement statement = connection.prepareStatement("SELECT count(*) FROM dataverse WHERE key LIKE ?");
+            statement.setString(1, "products.%");
+            resultSet = statement.executeQuery();
+            Assertions.assertTrue(resultSet.next());
+            Assertions.assertEquals(5, resultSet.getLong(1));
+            
+            statement = connection.prepareStatement("SELECT COUNT(*) FROM dataverse WHERE key = ?");
+            statement.setString(1, "title");
+            resultSet = statement.executeQuery();
+            Assertions.assertTrue(resultSet.next());
+            Assertions.assertEquals(1, resultSet.getLong(1));
+            statement.setString(1, "nothing");
+            resultSet = statement.executeQuery();
+            Assertions.assertTrue(resultSet.next());
+            Assertions.assertEquals(0, resultSet.getLong(1));
+            
+            statement = connection.prepareStatement("SELECT count(*) FROM dataverse WHERE key IN (?, ?)");
+            statement.setString(1, "title");
+            statement.setString(2, "nothing");
+            resultSet = statement.executeQuery();
+            Assertions.assertTrue(resultSet.next());
+            Assertions.assertEquals(1, resultSet.getLong(1));
+        }
+    }
+    
+    @Test
+    void orderByValueIsNotSupported() throws SQLException {
+        try (Connection connection = connect("parser=streaming")) {
+            Assertions.assertThrows(SQLFeatureNotSupportedException.class,
+                () -> connection.prepareStatement("SELECT key, value FROM dataverse ORDER BY value"));
+        }
+    }
+    
+    @Test
+    void shareConnectionBetweenThreads() throws Exception {
+        try (Connection connection = connect("parser=streaming")) {
+            PreparedStatement statement = connection.prepareStatement("SELECT value FROM dataverse WHERE key = ?");
+            Assertions.assertTrue(statement.isPoolable());
+            
+            Map<String, String> expected = Map.of("title", "Test", "products.2.color", "gray", "hello.attribute", "arbitrary",
+                "%ct.withprofile", "testvalue", "inlinetable.test", "test", "products.0.name", "Hammer");
+            List<String> keys = new ArrayList<>(expected.keySet());
+            ExecutorService executor = Executors.newFixedThreadPool(keys.size());
+            try {
+                List<Future<Boolean>> results = new ArrayList<>();
+                for (String key : keys) {
+                    results.add(executor.submit(() -> {
+                        // All threads use the same statement at once
+                        for (int i = 0; i < 2000; i++) {
+                            statement.setString(1, key);
+                            ResultSet resultSet = statement.executeQuery();
+                            if (!resultSet.next() || !expected.get(key).equals(resultSet.getString(1))) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }));
+                }
+                for (Future<Boolean> result : results) {
+                    Assertions.assertTrue(result.get());
+                }
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+    
+    @Test
+    void statementsDoNotShareState() throws Exception {
+        try (Connection connection = connect("parser=streaming"); Connection other = connect("parser=streaming")) {
+            String sql = "SELECT value FROM dataverse WHERE key = ?";
+            PreparedStatement statement = connection.prepareStatement(sql);
+            statement.setString(1, "title");
+            statement.setMaxRows(1);
+            Assertions.assertEquals(List.of("Test"), values(statement.executeQuery()));
+            
+            // Other threads have parameters and settings of their own
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                Callable<Integer> maxRows = statement::getMaxRows;
+                Callable<ResultSet> query = statement::executeQuery;
+                Assertions.assertEquals(0, (int) executor.submit(maxRows).get());
+                Assertions.assertThrows(ExecutionException.class, () -> executor.submit(query).get());
+            } finally {
+                executor.shutdown();
+            }
+            
+            // Preparing the same SQL again returns the cached statement, starting over
+            PreparedStatement again = connection.prepareStatement(sql);
+            Assertions.assertSame(statement, again);
+            Assertions.assertEquals(0, again.getMaxRows());
+            Assertions.assertThrows(SQLException.class, again::executeQuery);
+            
+            PreparedStatement fresh = other.prepareStatement(sql);
+            Assertions.assertNotSame(statement, fresh);
+            Assertions.assertSame(other, fresh.getConnection());
+        }
+    }
+    
+    @Test
+    void closedStatementCannotExecute() throws SQLException {
+        Connection connection = connect("parser=streaming");
+        PreparedStatement statement = connection.prepareStatement("SELECT value FROM dataverse WHERE key = ?");
+        statement.setString(1, "title");
+        statement.close();
+        Assertions.assertTrue(statement.isClosed());
+        Assertions.assertThrows(SQLException.class, statement::executeQuery);
+        
+        // Preparing the statement again hands it out anew
+        PreparedStatement other = connection.prepareStatement("SELECT value FROM dataverse WHERE key = ?");
+        Assertions.assertFalse(other.isClosed());
+        other.setString(1, "title");
+        Assertions.assertEquals(List.of("Test"), values(other.executeQuery()));
+        connection.close();
+        Assertions.assertTrue(other.isClosed());
+        Assertions.assertThrows(SQLException.class, other::executeQuery);
+    }
+    
+    @Test
+    void onlyTrailingWildcards() throws SQLException {
+        Assertions.assertEquals("dataverse.", ConfFilePreparedStatement.prefixOf("dataverse.%"));
+        Assertions.assertEquals("file_store%", ConfFilePreparedStatement.prefixOf("file\\_store\\%%"));
+        Assertions.assertThrows(SQLFeatureNotSupportedException.class, () -> ConfFilePreparedStatement.prefixOf("data%verse"));
+        Assertions.assertThrows(SQLFeatureNotSupportedException.class, () -> ConfFilePreparedStatement.prefixOf("file_store.%"));
+        Assertions.assertThrows(SQLFeatureNotSupportedException.class, () -> ConfFilePreparedStatement.prefixOf("dataverse"));
+    }
+}
@@ -0,0 +1,41 @@
+package io.gdcc.jdbc.conffile;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+class ConfFileResultSetTest {
+    
+    @Test
+    @SuppressWarnings("deprecation")
+    void convertRowsIntoColumns() throws SQLException {
+        ResultSet sut = new ConfFileResultSet(
+            List.of(List.of("", "title", "Test"), List.of("", "version", "1.0")),
+            Map.of("key", 1, "value", 2));
+        
+        Assertions.assertTrue(sut.next());
+        Assertions.assertEquals("title", sut.getString(1));
+        Assertions.assertEquals("Test", sut.getString("value"));
+        Assertions.assertTrue(sut.next());
+        Assertions.assertEquals("version", sut.getString("KEY"));
+        Assertions.assertEquals("1.0", sut.getString(2));
+        Assertions.assertFalse(sut.next());
+        Assertions.assertThrows(SQLException.class, () -> sut.getString(1));
+    }
+    
+    @Test
+    @SuppressWarnings("deprecation")
+    void convertNoRows() throws SQLException {
+        ResultSet sut = new ConfFileResultSet(List.of(), Map.of());
+        
+        Assertions.assertFalse(sut.isBeforeFirst());
+        Assertions.assertFalse(sut.next());
+        Assertions.assertFalse(sut.isLast());
+        Assertions.assertFalse(sut.isAfterLast());
+        Assertions.assertThrows(SQLException.class, () -> sut.findColumn("value"));
+    }
+}
@@ -0,0 +1,67 @@
+package io.gdcc.jdbc.conffile;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+
+class QueryPlanTest {
+    
+    @Test
+    void parseLookupOfConfigSource() throws SQLException {
+        QueryPlan sut = QueryPlan.parse("select value from dataverse where key = ?");
+        
+        Assertions.assertEquals(QueryPlan.Shape.ONE, sut.getShape());
+        Assertions.assertEquals("dataverse", sut.getTableName());
+        Assertions.assertEquals("value", sut.getValueColumnLabel());
+        Assertions.assertEquals("", sut.getKeyColumnLabel());
+        Assertions.assertEquals(1, sut.getParameterCount());
+        Assertions.assertFalse(sut.isSorted());
+    }
+    
+    @Test
+    void parseSelectAllOfConfigSource() throws SQLException {
+        QueryPlan sut = QueryPlan.parse("  SELECT \"key\",value\nFROM dataverse;");
+        
+        Assertions.assertEquals(QueryPlan.Shape.ALL, sut.getShape());
+        Assertions.assertEquals("key", sut.getKeyColumnLabel());
+        Assertions.assertEquals("value", sut.getValueColumnLabel());
+    }
+    
+    @Test
+    void parseAllClauses() throws SQLException {
+        QueryPlan sut = QueryPlan.parse("SELECT COUNT(*) FROM dataverse WHERE k IN (?,?, ?) ORDER BY k DESC LIMIT 10 OFFSET 20");
+        
+        Assertions.assertEquals(QueryPlan.Shape.MANY, sut.getShape());
+        Assertions.assertTrue(sut.isCount());
+        Assertions.assertEquals("COUNT(*)", sut.getValueColumnLabel());
+        Assertions.assertEquals("k", sut.getKeyColumnLabel());
+        Assertions.assertEquals(3, sut.getParameterCount());
+        Assertions.assertTrue(sut.isSorted());
+        Assertions.assertTrue(sut.isDescending());
+        Assertions.assertEquals(10, sut.getLimit());
+        Assertions.assertEquals(20, sut.getOffset());
+    }
+    
+    @Test
+    void rejectUnsupportedStatements() {
+        Assertions.assertThrows(SQLFeatureNotSupportedException.class, () -> QueryPlan.parse("DELETE FROM dataverse"));
+        Assertions.assertThrows(SQLFeatureNotSupportedException.class, () -> QueryPlan.parse("SELECT value FROM dataverse WHERE key > ?"));
+        Assertions.assertThrows(SQLFeatureNotSupportedException.class, () -> QueryPlan.parse("SELECT key, value FROM dataverse ORDER BY value"));
+        Assertions.assertThrows(SQLFeatureNotSupportedException.class, () -> QueryPlan.parse("SELECT a, b, c FROM dataverse"));
+        Assertions.assertThrows(SQLException.class, () -> QueryPlan.parse("SELECT value FROM dataverse WHERE key IN (?, )"));
+        Assertions.assertThrows(SQLException.class, () -> QueryPlan.parse("SELECT value FROM dataverse LIMIT ten"));
+        Assertions.assertThrows(SQLException.class, () -> QueryPlan.parse("SELECT value FROM"));
+    }
+    
+    @Test
+    void parseOnlyOnce() throws SQLException {
+        String sql = "SELECT value FROM parseOnlyOnce WHERE key = ?";
+        QueryPlan first = QueryPlan.of(sql);
+        long parses = QueryPlan.getParses();
+        
+        Assertions.assertSame(first, QueryPlan.of(sql));
+        Assertions.assertEquals(parses, QueryPlan.getParses());
+    }
+}
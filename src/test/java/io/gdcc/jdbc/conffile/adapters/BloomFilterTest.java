@@ -0,0 +1,72 @@
+package io.gdcc.jdbc.conffile.adapters;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+class BloomFilterTest {
+    
+    static final Set<String> keys = IntStream.range(0, 100000)
+        .mapToObj(i -> "dataverse.section" + (i % 100) + ".key" + i)
+        .collect(Collectors.toSet());
+    
+    @Test
+    void noFalseNegatives() {
+        BloomFilter sut = BloomFilter.of(keys);
+        
+        Assertions.assertTrue(keys.stream().allMatch(sut::mightContain));
+    }
+    
+    @Test
+    void falsePositiveRateAsExpected() {
+        BloomFilter sut = BloomFilter.of(keys);
+        
+        long falsePositives = IntStream.range(0, 100000)
+            .mapToObj(i -> "mp.config.absent" + i)
+            .filter(sut::mightContain)
+            .count();
+        Assertions.assertTrue(falsePositives < 100000 * BloomFilter.FALSE_POSITIVE_RATE * 1.5, "false positives: " + falsePositives);
+        Assertions.assertEquals(BloomFilter.FALSE_POSITIVE_RATE, sut.getExpectedFalsePositiveRate(), 0.002);
+    }
+    
+    @Test
+    void answerAbsentKeysWithoutIndex() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(AdapterOptions.PARSER, "streaming");
+        Adapter adapter = Adapter.Factory.create("toml", StreamingTomlParserTest.file.getParent(), "dataverse", null, new AdapterOptions(properties));
+        
+        long negatives = BloomFilter.getNegatives();
+        long positives = BloomFilter.getPositives();
+        Assertions.assertEquals("Test", adapter.readItem("title"));
+        Assertions.assertNull(adapter.readItem("mp.config.profile"));
+        Assertions.assertEquals(positives + 1, BloomFilter.getPositives());
+        Assertions.assertTrue(BloomFilter.getNegatives() + BloomFilter.getFalsePositives() > negatives);
+    }
+    
+    @Test
+    void storeFilterWithCompiledIndex() throws IOException {
+        Path directory = Files.createTempDirectory("bloom-filter");
+        Path indexFile = directory.resolve("test.idx");
+        Map<String, String> items = new HashMap<>();
+        keys.forEach(key -> items.put(key, "value"));
+        try {
+            CompiledIndex.write(indexFile, directory, items, 0, 0, 0, 1);
+            BloomFilter sut = CompiledIndex.open(indexFile, directory).filter();
+            
+            Assertions.assertTrue(keys.stream().allMatch(sut::mightContain));
+            Assertions.assertEquals(BloomFilter.of(keys).getExpectedFalsePositiveRate(), sut.getExpectedFalsePositiveRate());
+        } finally {
+            Files.deleteIfExists(indexFile);
+            Files.delete(directory);
+        }
+    }
+}
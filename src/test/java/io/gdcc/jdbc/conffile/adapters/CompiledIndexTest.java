@@ -0,0 +1,165 @@
+package io.gdcc.jdbc.conffile.adapters;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+class CompiledIndexTest {
+    
+    Path directory;
+    CompiledTomlBackend sut;
+    
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("compiled-index");
+        sut = new CompiledTomlBackend(directory.resolve("index"), false);
+    }
+    
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+    
+    @Test
+    void compileLikeFlattening() throws IOException {
+        Map<String, String> index = sut.flatten(StreamingTomlParserTest.file);
+        
+        Assertions.assertTrue(index instanceof CompiledIndex);
+        Assertions.assertEquals(StreamingTomlParser.flatten(StreamingTomlParserTest.file), new HashMap<>(index));
+        Assertions.assertEquals("gray", ((FlatIndex) index).withPrefix("%dev.").get("%dev.products.2.color"));
+        Assertions.assertNull(index.get("products.3.color"));
+    }
+    
+    @Test
+    void reuseIndexUntilFileChanges() throws IOException {
+        Path file = directory.resolve("test.toml");
+        Files.writeString(file, "key = \"v\u00e4lue\"\n");
+        Assertions.assertEquals("v\u00e4lue", sut.flatten(file).get("key"));
+        
+        // An unchanged file is served from the existing index, without compiling it again
+        Path indexFile = sut.indexFileFor(file);
+        FileTime compiled = FileTime.fromMillis(0);
+        Files.setLastModifiedTime(indexFile, compiled);
+        Assertions.assertEquals("v\u00e4lue", sut.flatten(file).get("key"));
+        Assertions.assertEquals(compiled, Files.getLastModifiedTime(indexFile));
+        
+        Files.writeString(file, "key = \"changed\"\n");
+        Assertions.assertEquals("changed", sut.flatten(file).get("key"));
+        Assertions.assertNotEquals(compiled, Files.getLastModifiedTime(indexFile));
+    }
+    
+    @Test
+    void useIndexOnlyForItsSourceFile() throws IOException {
+        Path file = directory.resolve("test.toml");
+        Files.writeString(file, "key = \"one\"\n");
+        Path other = Files.createDirectory(directory.resolve("other")).resolve("test.toml");
+        Files.writeString(other, "key = \"two\"\n");
+        Files.setLastModifiedTime(other, Files.getLastModifiedTime(file));
+        Assertions.assertEquals("one", sut.flatten(file).get("key"));
+        Assertions.assertNotEquals(sut.indexFileFor(file), sut.indexFileFor(other));
+        
+        // An index file planted for another file is not used, even with the same size and last modified time
+        Files.copy(sut.indexFileFor(file), sut.indexFileFor(other));
+        Assertions.assertEquals("two", new CompiledTomlBackend(directory.resolve("index"), true).flatten(other).get("key"));
+    }
+    
+    @Test
+    void refuseIndexDirectoryWritableByOthers() throws IOException {
+        Path file = directory.resolve("test.toml");
+        Files.writeString(file, "key = \"value\"\n");
+        // A missing index directory is created accessible to its owner only
+        Assertions.assertTrue(sut.flatten(file) instanceof CompiledIndex);
+        Assertions.assertEquals(PosixFilePermissions.fromString("rwx------"), Files.getPosixFilePermissions(directory.resolve("index")));
+        
+        Path shared = Files.createDirectory(directory.resolve("shared"));
+        Files.setPosixFilePermissions(shared, PosixFilePermissions.fromString("rwxrwxrwx"));
+        Map<String, String> index = new CompiledTomlBackend(shared, false).flatten(file);
+        Assertions.assertFalse(index instanceof CompiledIndex);
+        Assertions.assertEquals("value", index.get("key"));
+        try (Stream<Path> files = Files.list(shared)) {
+            Assertions.assertEquals(0, files.count());
+        }
+    }
+    
+    @Test
+    void sharedIndexTrustsStampOfSourceFile() throws IOException {
+        Path file = directory.resolve("test.toml");
+        Files.writeString(file, "key = \"one\"\n");
+        FileTime lastModified = FileTime.fromMillis(System.currentTimeMillis() - 10 * CompiledTomlBackend.RACY_MILLIS);
+        Files.setLastModifiedTime(file, lastModified);
+        CompiledIndex compiled = (CompiledIndex) new CompiledTomlBackend(directory.resolve("index"), true).flatten(file);
+        Assertions.assertEquals(1, compiled.generation());
+        
+        // Another JVM maps the same index without reading the file, as long as size and last modified time match
+        Files.writeString(file, "key = \"two\"\n");
+        Files.setLastModifiedTime(file, lastModified);
+        CompiledTomlBackend otherJvm = new CompiledTomlBackend(directory.resolve("index"), true);
+        Assertions.assertEquals("one", otherJvm.flatten(file).get("key"));
+        
+        Files.setLastModifiedTime(file, FileTime.fromMillis(lastModified.toMillis() + 1000));
+        CompiledIndex recompiled = (CompiledIndex) otherJvm.flatten(file);
+        Assertions.assertEquals("two", recompiled.get("key"));
+        Assertions.assertEquals(2, recompiled.generation());
+        Assertions.assertEquals(0, CompiledTomlBackend.getCompiling());
+    }
+    
+    @Test
+    void sharedIndexComparesChecksumOfRecentlyModifiedFile() throws IOException {
+        Path file = directory.resolve("test.toml");
+        Files.writeString(file, "key = \"one\"\n");
+        FileTime lastModified = Files.getLastModifiedTime(file);
+        Assertions.assertEquals("one", new CompiledTomlBackend(directory.resolve("index"), true).flatten(file).get("key"));
+        
+        // Modified again within the precision of the last modified time: the stamp cannot tell, the checksum can
+        Files.writeString(file, "key = \"two\"\n");
+        Files.setLastModifiedTime(file, lastModified);
+        CompiledTomlBackend otherJvm = new CompiledTomlBackend(directory.resolve("index"), true);
+        CompiledIndex compiled = (CompiledIndex) otherJvm.flatten(file);
+        Assertions.assertEquals("two", compiled.get("key"));
+        Assertions.assertFalse(compiled.hasSourceStamp(Files.size(file), lastModified.toMillis()));
+        
+        // Once old enough, the stamp is trusted again
+        FileTime old = FileTime.fromMillis(lastModified.toMillis() - 10 * CompiledTomlBackend.RACY_MILLIS);
+        Files.setLastModifiedTime(file, old);
+        Assertions.assertTrue(((CompiledIndex) otherJvm.flatten(file)).hasSourceStamp(Files.size(file), old.toMillis()));
+    }
+    
+    @Test
+    void sharedIndexIsCompiledOnce() throws Exception {
+        Path file = directory.resolve("test.toml");
+        Files.writeString(file, "key = \"value\"\n");
+        CompiledTomlBackend shared = new CompiledTomlBackend(directory.resolve("index"), true);
+        
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Map<String, String>>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> shared.flatten(file)));
+            }
+            for (Future<Map<String, String>> result : results) {
+                Assertions.assertEquals(1, ((CompiledIndex) result.get()).generation());
+            }
+            Assertions.assertEquals(0, CompiledTomlBackend.getCompiling());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package io.gdcc.jdbc.conffile.adapters;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+class FrontCodedIndexTest {
+    
+    @Test
+    void findEveryKeyAndNoOther() {
+        Map<String, String> items = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            items.put("dataverse.section" + (i % 100) + ".key" + i, "value" + i);
+        }
+        FrontCodedIndex sut = FrontCodedIndex.of(items);
+        
+        Assertions.assertEquals(items, new HashMap<>(sut));
+        items.forEach((key, value) -> Assertions.assertEquals(value, sut.get(key)));
+        Assertions.assertNull(sut.get("dataverse.section1.key0"));
+        Assertions.assertNull(sut.get("dataverse.section0.key"));
+        Assertions.assertNull(sut.get("a"));
+        Assertions.assertNull(sut.get("zzz"));
+        Assertions.assertTrue(sut.keyBytes() < 16L * items.size());
+    }
+    
+    @Test
+    void keysAreSortedByBytes() {
+        Map<String, String> items = Map.of("b", "1", "a.b", "2", "a", "3", "\u00e4", "4", "a.a", "5");
+        FrontCodedIndex sut = FrontCodedIndex.of(items);
+        
+        List<String> keys = new ArrayList<>(sut.keySet());
+        Assertions.assertEquals(List.of("a", "a.a", "a.b", "b", "\u00e4"), keys);
+        Assertions.assertEquals("4", sut.get("\u00e4"));
+    }
+    
+    @Test
+    void keysStartingWithPrefix() {
+        Map<String, String> items = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            items.put("dataverse.section" + (i % 10) + ".key" + i, "value" + i);
+        }
+        items.put("dataverse.\u00e4", "umlaut");
+        items.put("dataverse.\ud83d\ude00", "emoji");
+        items.put("dataverse.\uff01", "fullwidth");
+        FrontCodedIndex sut = FrontCodedIndex.of(items);
+        
+        List<Map.Entry<String, String>> section = SortedKeys.startingWith(sut.sortedEntries(), "dataverse.section3.");
+        Assertions.assertEquals(100, section.size());
+        Assertions.assertEquals(Map.entry("dataverse.section3.key103", "value103"), section.get(0));
+        // Sorted like their UTF-8 bytes, which puts characters beyond the basic multilingual plane last
+        List<Map.Entry<String, String>> all = SortedKeys.startingWith(sut.sortedEntries(), "dataverse.");
+        Assertions.assertEquals(List.of("dataverse.\u00e4", "dataverse.\uff01", "dataverse.\ud83d\ude00"),
+            all.subList(all.size() - 3, all.size()).stream().map(Map.Entry::getKey).collect(Collectors.toList()));
+        Assertions.assertEquals(1003, SortedKeys.startingWith(sut.sortedEntries(), "").size());
+        Assertions.assertEquals(0, SortedKeys.startingWith(sut.sortedEntries(), "mp.").size());
+    }
+    
+    @Test
+    void indexTestFile() throws IOException {
+        FrontCodedIndex sut = FrontCodedIndex.of(StreamingTomlParser.flatten(StreamingTomlParserTest.file));
+        
+        Assertions.assertEquals("gray", sut.get("products.2.color"));
+        Assertions.assertEquals("gray", sut.withPrefix("%dev.").get("%dev.products.2.color"));
+        Assertions.assertNull(sut.withPrefix("%dev.").get("products.2.color"));
+    }
+    
+    @Test
+    void emptyIndex() {
+        Assertions.assertNull(FrontCodedIndex.of(Map.of()).get("key"));
+        Assertions.assertTrue(FrontCodedIndex.of(Map.of()).isEmpty());
+    }
+}
@@ -0,0 +1,63 @@
+package io.gdcc.jdbc.conffile.adapters;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+class PerfectHashIndexTest {
+    
+    @Test
+    void findEveryKeyAndNoOther() {
+        Map<String, String> items = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            items.put("dataverse.section" + (i % 100) + ".key" + i, "value" + i);
+        }
+        PerfectHashIndex sut = PerfectHashIndex.of(items);
+        
+        Assertions.assertEquals(items, new HashMap<>(sut));
+        items.forEach((key, value) -> Assertions.assertEquals(value, sut.get(key)));
+        Assertions.assertNull(sut.get("dataverse.section1.key0"));
+        Assertions.assertNull(sut.get("mp.config.profile"));
+    }
+    
+    @Test
+    void keysWithSameHashCode() {
+        // "Aa" and "BB" have the same String.hashCode()
+        Map<String, String> items = Map.of("Aa", "1", "BB", "2", "x", "3");
+        PerfectHashIndex sut = PerfectHashIndex.of(items);
+        
+        Assertions.assertEquals(items, new HashMap<>(sut));
+        Assertions.assertNull(sut.get("AaBB"));
+    }
+    
+    @Test
+    void manyRandomKeys() {
+        Random random = new Random(42);
+        Map<String, String> items = new HashMap<>();
+        while (items.size() < 1000000) {
+            items.put(Long.toString(random.nextLong(), 36), "value");
+        }
+        PerfectHashIndex sut = PerfectHashIndex.of(items);
+        
+        Assertions.assertEquals(items.size(), sut.size());
+        items.keySet().forEach(key -> Assertions.assertEquals("value", sut.get(key)));
+    }
+    
+    @Test
+    void indexTestFile() throws IOException {
+        PerfectHashIndex sut = PerfectHashIndex.of(StreamingTomlParser.flatten(StreamingTomlParserTest.file));
+        
+        Assertions.assertEquals("gray", sut.get("products.2.color"));
+        Assertions.assertEquals("gray", sut.withPrefix("%dev.").get("%dev.products.2.color"));
+        Assertions.assertNull(sut.withPrefix("%dev.").get("products.2.color"));
+    }
+    
+    @Test
+    void emptyIndex() {
+        Assertions.assertNull(PerfectHashIndex.of(Map.of()).get("key"));
+    }
+}
@@ -0,0 +1,84 @@
+package io.gdcc.jdbc.conffile.adapters;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+class ProfileCatalogTest {
+    
+    Path directory;
+    
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("profile-catalog");
+        for (String name : new String[]{"dataverse-ct.toml", "dataverse.toml", "dataversefoo.toml", "dataverse-dev.txt", "other.toml"}) {
+            Files.writeString(directory.resolve(name), "");
+        }
+        Files.createDirectory(directory.resolve("dataverse-dir.toml"));
+        // Make sure the listing is not considered racy, as if the files have been there for a while
+        Files.setLastModifiedTime(directory, FileTime.fromMillis(System.currentTimeMillis() - 60000));
+    }
+    
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+    
+    @Test
+    void matchExactTableAndProfileNames() throws IOException {
+        Assertions.assertEquals(Arrays.asList(null, "ct"), ProfileCatalog.profilesFor(directory, "dataverse", "toml"));
+        Assertions.assertEquals(Arrays.asList((String) null), ProfileCatalog.profilesFor(directory, "dataversefoo", "toml"));
+        Assertions.assertEquals(Arrays.asList(), ProfileCatalog.profilesFor(directory, "data", "toml"));
+    }
+    
+    @Test
+    void listDirectoryAgainOnlyAfterChange() throws IOException {
+        ProfileCatalog.profilesFor(directory, "dataverse", "toml");
+        long scans = ProfileCatalog.getScans();
+        Assertions.assertEquals(Arrays.asList(null, "ct"), ProfileCatalog.profilesFor(directory, "dataverse", "toml"));
+        Assertions.assertEquals(scans, ProfileCatalog.getScans());
+        
+        Files.writeString(directory.resolve("dataverse-prod.toml"), "");
+        Assertions.assertEquals(Arrays.asList(null, "ct", "prod"), ProfileCatalog.profilesFor(directory, "dataverse", "toml"));
+        Assertions.assertEquals(scans + 1, ProfileCatalog.getScans());
+    }
+    
+    @Test
+    void resolveFilesFromCatalog() throws IOException {
+        Assertions.assertEquals(directory.resolve("dataverse-ct.toml"), ProfileCatalog.resolve(directory, "dataverse-ct", List.of("toml")));
+        Assertions.assertNull(ProfileCatalog.resolve(directory, "dataverse-dev", List.of("toml")));
+        // Directories are no files, even when named like one
+        Assertions.assertNull(ProfileCatalog.resolve(directory, "dataverse-dir", List.of("toml")));
+        
+        long scans = ProfileCatalog.getScans();
+        Assertions.assertNull(ProfileCatalog.resolve(directory, "dataverse-dev", List.of("toml")));
+        Assertions.assertEquals(scans, ProfileCatalog.getScans());
+    }
+    
+    @Test
+    void missingFileFailsOrIsEmpty() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(AdapterOptions.PARSER, "streaming");
+        Assertions.assertThrows(FileNotFoundException.class,
+            () -> Adapter.Factory.create("toml", directory, "dataverse", "dev", new AdapterOptions(properties)));
+        
+        properties.setProperty(AdapterOptions.MISSING_FILE, "empty");
+        Adapter adapter = Adapter.Factory.create("toml", directory, "dataverse", "dev", new AdapterOptions(properties));
+        Assertions.assertNull(adapter.readItem("key"));
+        Assertions.assertTrue(adapter.readAllItems().isEmpty());
+    }
+}
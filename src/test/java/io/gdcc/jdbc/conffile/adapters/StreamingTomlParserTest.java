@@ -0,0 +1,107 @@
+package io.gdcc.jdbc.conffile.adapters;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+class StreamingTomlParserTest {
+    
+    static final Path file = Path.of("src/test/resources/configsource/dataverse.toml");
+    
+    static final String nestedArrays = "[[fruits]]\nname = \"apple\"\n[fruits.physical]\ncolor = \"red\"\n" +
+        "[[fruits.varieties]]\nname = \"red delicious\"\n[[fruits.varieties]]\nname = \"granny smith\"\n" +
+        "[[fruits]]\nname = \"banana\"\n[[fruits.varieties]]\nname = \"plantain\"\n";
+    static final String scalars = "int = 1_000\nhex = 0xff\nfloat = 6.626e-34\nbool = true\n" +
+        "odt = 1979-05-27T07:32:00Z\nld = 1979-05-27\nempty = []\nnested = [ [1, 2], ['a'] ]\n" +
+        "quoted.\"dotted.key\" = 'literal\\n'\n";
+    
+    @Test
+    void flattenTestFile() throws IOException {
+        Map<String, String> sut = StreamingTomlParser.flatten(file);
+        
+        Assertions.assertEquals("Test", sut.get("title"));
+        Assertions.assertEquals("test", sut.get("inlinetable.test"));
+        Assertions.assertEquals("{ \"hello\": \"hello\" }\n", sut.get("json"));
+        Assertions.assertEquals("1,2,3,4", sut.get("hello.array"));
+        Assertions.assertEquals("foobbq", sut.get("hello.subtable.foobar"));
+        Assertions.assertEquals("738594937", sut.get("products.0.sku"));
+        Assertions.assertEquals("gray", sut.get("products.2.color"));
+        Assertions.assertEquals(11, sut.size());
+    }
+    
+    @Test
+    void nestedArraysOfTables() throws IOException {
+        Map<String, String> sut = StreamingTomlParser.flatten(nestedArrays, file);
+        
+        Assertions.assertEquals("red", sut.get("fruits.0.physical.color"));
+        Assertions.assertEquals("granny smith", sut.get("fruits.0.varieties.1.name"));
+        Assertions.assertEquals("plantain", sut.get("fruits.1.varieties.0.name"));
+    }
+    
+    @Test
+    void valuesFormattedLikeNightConfig() throws IOException {
+        Map<String, String> sut = StreamingTomlParser.flatten(scalars, file);
+        
+        Assertions.assertEquals("1000", sut.get("int"));
+        Assertions.assertEquals("255", sut.get("hex"));
+        Assertions.assertEquals("6.626E-34", sut.get("float"));
+        Assertions.assertEquals("true", sut.get("bool"));
+        Assertions.assertEquals("1979-05-27T07:32Z", sut.get("odt"));
+        Assertions.assertEquals("1979-05-27", sut.get("ld"));
+        Assertions.assertFalse(sut.containsKey("empty"));
+        Assertions.assertEquals("[1, 2],[a]", sut.get("nested"));
+        Assertions.assertEquals("literal\\n", sut.get("quoted.dotted.key"));
+    }
+    
+    @Test
+    void flattenLikeNightConfig() throws IOException {
+        for (Path fixture : new Path[]{file, Path.of("src/test/resources/configsource/dataverse-ct.toml")}) {
+            Assertions.assertEquals(NightConfigBackend.INSTANCE.flatten(fixture), StreamingTomlParser.flatten(fixture), fixture.toString());
+        }
+        
+        Path written = Files.createTempFile("parity", ".toml");
+        try {
+            for (String toml : new String[]{nestedArrays, scalars}) {
+                Files.writeString(written, toml);
+                Assertions.assertEquals(NightConfigBackend.INSTANCE.flatten(written), StreamingTomlParser.flatten(written), toml);
+            }
+        } finally {
+            Files.delete(written);
+        }
+    }
+    
+    @Test
+    void indexMappedFileLikeFlattening() throws IOException {
+        MappedTomlIndex sut = StreamingTomlParser.index(file);
+        
+        Assertions.assertEquals(StreamingTomlParser.flatten(file), new HashMap<>(sut));
+        Assertions.assertEquals("gray", sut.withPrefix("%dev.").get("%dev.products.2.color"));
+        Assertions.assertNull(sut.withPrefix("%dev.").get("products.2.color"));
+    }
+    
+    @Test
+    void indexMappedFileWithUnicode() throws IOException {
+        String toml = "\uFEFF\"k\u00e9y\" = \"v\u00e4lue \\u00e9\"\nmulti = \"\"\"\nline \\\"\"\" \"\"\"\"\n" +
+            "literal = '''a'''''\narray = [ 'x', \"\u00fc\", [1, 2] ] # comment\nodt = 1979-05-27 07:32:00Z\n";
+        Path mapped = Files.createTempFile("mapped", ".toml");
+        try {
+            Files.writeString(mapped, toml);
+            Map<String, String> sut = StreamingTomlParser.index(mapped);
+            
+            Assertions.assertEquals(StreamingTomlParser.flatten(toml, mapped), new HashMap<>(sut));
+            Assertions.assertEquals("v\u00e4lue \u00e9", sut.get("k\u00e9y"));
+        } finally {
+            Files.delete(mapped);
+        }
+    }
+    
+    @Test
+    void failOnSyntaxError() {
+        Assertions.assertThrows(IOException.class, () -> StreamingTomlParser.flatten("key = \"unterminated\n", file));
+    }
+}
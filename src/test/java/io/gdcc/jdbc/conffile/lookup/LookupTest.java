@@ -36,6 +36,12 @@ class LookupTest {
         Assertions.assertEquals("arbitrary", sut);
     }
     
+    @Test
+    void testArrayOfTablesValue() {
+        String sut = config.getValue("products.2.color", String.class);
+        Assertions.assertEquals("gray", sut);
+    }
+    
     @Test
     void testGetAllProperties() {
         List<String> propertyNames = StreamSupport.stream(config.getPropertyNames().spliterator(), false).collect(Collectors.toList());
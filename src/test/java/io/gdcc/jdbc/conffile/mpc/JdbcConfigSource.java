@@ -61,7 +61,7 @@ public class JdbcConfigSource implements ConfigSource {
     }
     
     // This code has been copied from https://github.com/payara/Payara/blob/master/nucleus/payara-modules/nucleus-microprofile/config-service/src/main/java/fish/payara/nucleus/microprofile/config/source/JDBCConfigSourceHelper.java
-    public synchronized String getConfigValue(String propertyName) {
+    public String getConfigValue(String propertyName) {
         if (selectOne != null) {
             try {
                 selectOne.setString(1, propertyName);
@@ -77,7 +77,7 @@ public class JdbcConfigSource implements ConfigSource {
     }
     
     // This code has been copied from https://github.com/payara/Payara/blob/master/nucleus/payara-modules/nucleus-microprofile/config-service/src/main/java/fish/payara/nucleus/microprofile/config/source/JDBCConfigSourceHelper.java
-    public synchronized Map<String, String> getAllConfigValues() {
+    public Map<String, String> getAllConfigValues() {
         Map<String, String> result = new HashMap<>();
         if (selectAll != null) {
             try {